@@ -0,0 +1,33 @@
+package com.dominicapps.tablelab.lab.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a field of a @Table bean to a column. Private fields are reached through their
+ * getX/isX and setX accessors. Supported types: int, long, short, double, float, boolean,
+ * their boxes, String, byte[] and org.joda.time.DateTime, stored as INTEGER millis. A DateTime
+ * field x with getXMillis() and setXMillis(long) is mapped through them, so rows read and
+ * bound without building a DateTime.
+ */
+
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface Column {
+
+    /**
+     * @return column name, snake case of the field name if empty
+     */
+    String value() default "";
+
+    /**
+     * @return INTEGER PRIMARY KEY, left out of inserts so SQLite assigns it
+     */
+    boolean primaryKey() default false;
+
+    boolean notNull() default false;
+
+    boolean unique() default false;
+}
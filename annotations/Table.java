@@ -0,0 +1,24 @@
+package com.dominicapps.tablelab.lab.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a bean for TableProcessor, which generates a RowMapper named after it:
+ * Word gives WordMapper, in the same package.
+ *
+ *      @Table("words")
+ *      public class Word { @Column(primaryKey = true) int id; @Column String name; ... }
+ */
+
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Table {
+
+    /**
+     * @return table name
+     */
+    String value();
+}
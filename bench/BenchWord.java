@@ -0,0 +1,66 @@
+package com.dominicapps.tablelab.lab.bench;
+
+import org.joda.time.DateTime;
+
+/**
+ * Wide bean of the README WordTable shape, used by WordBench.
+ */
+
+public class BenchWord {
+
+    private int id, letterId;
+    private String nombre, name, nomine, definition, image;
+    private DateTime created, updated;
+
+    public BenchWord() {
+    }
+
+    public BenchWord(int id, int letterId, String nombre, String name, String nomine, String definition,
+                     String image, DateTime created, DateTime updated) {
+        this.id = id;
+        this.letterId = letterId;
+        this.nombre = nombre;
+        this.name = name;
+        this.nomine = nomine;
+        this.definition = definition;
+        this.image = image;
+        this.created = created;
+        this.updated = updated;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getLetterId() {
+        return letterId;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNomine() {
+        return nomine;
+    }
+
+    public String getDefinition() {
+        return definition;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public DateTime getCreated() {
+        return created;
+    }
+
+    public DateTime getUpdated() {
+        return updated;
+    }
+}
@@ -0,0 +1,157 @@
+package com.dominicapps.tablelab.lab.bench;
+
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Tiny on device benchmark harness: warm up, then time a few iterations of an operation and
+ * read ART's allocation counters around them, so per row garbage shows next to throughput.
+ * Run it from an instrumentation test or a debug screen on a quiet device.
+ */
+
+public class Benchmark {
+    public static final String TAG = Benchmark.class.getSimpleName();
+
+    private static final String BYTES_ALLOCATED = "art.gc.bytes-allocated";
+    private static final String GC_COUNT = "art.gc.gc-count";
+
+    /**
+     * One operation, called opsPerIteration times per iteration.
+     */
+    public interface Op {
+        /**
+         * @param i call number, to vary keys
+         */
+        void run(int i);
+    }
+
+    /**
+     * Best and median of the measured iterations.
+     */
+    public static class Result {
+
+        private final String name;
+        private final int rows;
+        private final double opsPerSecond, bestOpsPerSecond;
+        private final long bytesPerOp, gcs;
+
+        public Result(String name, int rows, double opsPerSecond, double bestOpsPerSecond, long bytesPerOp, long gcs) {
+            this.name = name;
+            this.rows = rows;
+            this.opsPerSecond = opsPerSecond;
+            this.bestOpsPerSecond = bestOpsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+            this.gcs = gcs;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return rows in the table while measuring
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return median throughput
+         */
+        public double getOpsPerSecond() {
+            return opsPerSecond;
+        }
+
+        public double getBestOpsPerSecond() {
+            return bestOpsPerSecond;
+        }
+
+        /**
+         * @return bytes allocated per operation, -1 if the runtime does not tell
+         */
+        public long getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        /**
+         * @return collections during the measured iterations, -1 if the runtime does not tell
+         */
+        public long getGcs() {
+            return gcs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %9d rows %12.1f ops/s (best %.1f) %10d B/op %4d gc",
+                    name, rows, opsPerSecond, bestOpsPerSecond, bytesPerOp, gcs);
+        }
+    }
+
+    private final int mWarmups;
+    private final int mIterations;
+
+    /**
+     * @param warmups iterations run and thrown away
+     * @param iterations iterations measured
+     */
+    public Benchmark(int warmups, int iterations) {
+        mWarmups = warmups;
+        mIterations = Math.max(1, iterations);
+    }
+
+    /**
+     * @param name result name
+     * @param rows rows in the table, reported as is
+     * @param opsPerIteration calls of op per iteration
+     * @param op operation
+     * @return measured result, also logged
+     */
+    public Result measure(String name, int rows, int opsPerIteration, Op op) {
+        int call = 0;
+        for (int w = 0; w < mWarmups; w++) {
+            for (int i = 0; i < opsPerIteration; i++) {
+                op.run(call++);
+            }
+        }
+
+        double[] throughput = new double[mIterations];
+        long bytesBefore = stat(BYTES_ALLOCATED);
+        long gcsBefore = stat(GC_COUNT);
+
+        for (int it = 0; it < mIterations; it++) {
+            long begin = System.nanoTime();
+            for (int i = 0; i < opsPerIteration; i++) {
+                op.run(call++);
+            }
+            long nanos = Math.max(1, System.nanoTime() - begin);
+            throughput[it] = opsPerIteration * 1e9 / nanos;
+        }
+
+        long bytesAfter = stat(BYTES_ALLOCATED);
+        long gcsAfter = stat(GC_COUNT);
+        long ops = (long) opsPerIteration * mIterations;
+
+        Arrays.sort(throughput);
+        Result result = new Result(name, rows,
+                throughput[throughput.length / 2],
+                throughput[throughput.length - 1],
+                bytesBefore < 0 || bytesAfter < 0 ? -1 : (bytesAfter - bytesBefore) / Math.max(1, ops),
+                gcsBefore < 0 || gcsAfter < 0 ? -1 : gcsAfter - gcsBefore);
+        Log.i(TAG, result.toString());
+        return result;
+    }
+
+    private static long stat(String name) {
+        String value = Debug.getRuntimeStat(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
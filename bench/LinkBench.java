@@ -0,0 +1,51 @@
+package com.dominicapps.tablelab.lab.bench;
+
+import android.app.Activity;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.dominicapps.tablelab.lab.labs.ManyLab;
+
+/**
+ * Benchmark link table: words to tags, unique per pair.
+ */
+
+public class LinkBench extends ManyLab {
+    public static final String TAG = LinkBench.class.getSimpleName();
+
+    public static final String TABLE = "bench_links";
+    public static final String WORD_ID = "word_id";
+    public static final String TAG_ID = "tag_id";
+
+    public LinkBench(Activity activity, SQLiteDatabase database) {
+        super(activity, database);
+    }
+
+    public static void create(SQLiteDatabase database) {
+        database.execSQL(CREATE_TABLE_IF_NOT_EXISTS + TABLE + " (" +
+                ID + PRIMARY_KEY + ", " +
+                WORD_ID + INTEGER_NOT_NULL + ", " +
+                TAG_ID + INTEGER_NOT_NULL + ", " +
+                CREATED + INTEGER_NOT_NULL + ", " +
+                UPDATED + INTEGER_NOT_NULL + ", " +
+                UNIQUE + "(" + WORD_ID + COMMA + TAG_ID + "))");
+    }
+
+    public static void drop(SQLiteDatabase database) {
+        database.execSQL(DROP_TABLE_IF_EXISTS + TABLE);
+    }
+
+    @Override
+    public String table() {
+        return TABLE;
+    }
+
+    @Override
+    public String left() {
+        return WORD_ID;
+    }
+
+    @Override
+    public String right() {
+        return TAG_ID;
+    }
+}
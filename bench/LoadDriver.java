@@ -0,0 +1,500 @@
+package com.dominicapps.tablelab.lab.bench;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.util.Log;
+
+import com.dominicapps.tablelab.lab.labs.TableLab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Mixed workload against any TableLab: reader threads find(key) while writer threads save
+ * or update batches in their own transactions. Reports throughput, latency percentiles,
+ * "database is locked" busy and retry counts and the time writers wait for the transaction.
+ *
+ *      LoadDriver.Report report = new LoadDriver<>(factory, 10000)
+ *              .readers(4).writers(1).batchSize(50).zipfian(true).run(30000);
+ */
+
+public class LoadDriver<T> {
+    public static final String TAG = LoadDriver.class.getSimpleName();
+
+    /**
+     * Builds the lab of every thread, so no lab is shared across threads, and the rows writers write.
+     */
+    public interface LabFactory<T> {
+        /**
+         * @return lab for one thread, from the database connection under test
+         */
+        TableLab<T> create();
+
+        /**
+         * @param key row id
+         * @return bean written for key
+         */
+        T row(int key);
+    }
+
+    public enum WriteMode {
+        INSERT, UPDATE
+    }
+
+    /**
+     * Totals of one run.
+     */
+    public static class Report {
+
+        private final long millis, reads, writes, rowsWritten, busy, retries, failures;
+        private final Histogram readNanos, writeNanos, waitNanos;
+
+        Report(long millis, long reads, long writes, long rowsWritten, long busy, long retries, long failures,
+               Histogram readNanos, Histogram writeNanos, Histogram waitNanos) {
+            this.millis = millis;
+            this.reads = reads;
+            this.writes = writes;
+            this.rowsWritten = rowsWritten;
+            this.busy = busy;
+            this.retries = retries;
+            this.failures = failures;
+            this.readNanos = readNanos;
+            this.writeNanos = writeNanos;
+            this.waitNanos = waitNanos;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        /**
+         * @return committed write transactions
+         */
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        public double getReadsPerSecond() {
+            return reads * 1000.0 / Math.max(1, millis);
+        }
+
+        public double getWritesPerSecond() {
+            return writes * 1000.0 / Math.max(1, millis);
+        }
+
+        /**
+         * @return operations that hit SQLiteDatabaseLockedException at least once
+         */
+        public long getBusy() {
+            return busy;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * @return operations given up after maxRetries or failed otherwise
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @param p percentile, 0 .. 100
+         */
+        public long readNanos(double p) {
+            return readNanos.percentile(p);
+        }
+
+        /**
+         * @param p percentile, 0 .. 100
+         */
+        public long writeNanos(double p) {
+            return writeNanos.percentile(p);
+        }
+
+        /**
+         * @param p percentile, 0 .. 100
+         * @return time beginTransaction() blocked
+         */
+        public long waitNanos(double p) {
+            return waitNanos.percentile(p);
+        }
+
+        public long getTotalWaitNanos() {
+            return waitNanos.sum;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%dms: %.1f reads/s p50 %dus p99 %dus p999 %dus | %.1f writes/s (%d rows) "
+                            + "p50 %dus p99 %dus p999 %dus | wait p50 %dus p99 %dus total %dms | "
+                            + "busy %d retries %d failures %d",
+                    millis, getReadsPerSecond(), readNanos(50) / 1000, readNanos(99) / 1000, readNanos(99.9) / 1000,
+                    getWritesPerSecond(), rowsWritten,
+                    writeNanos(50) / 1000, writeNanos(99) / 1000, writeNanos(99.9) / 1000,
+                    waitNanos(50) / 1000, waitNanos(99) / 1000, waitNanos.sum / 1000000,
+                    busy, retries, failures);
+        }
+    }
+
+    private final LabFactory<T> mFactory;
+    private final int mKeys;
+    private int mReaders = 2;
+    private int mWriters = 1;
+    private double mWriteRatio = 1;
+    private int mBatchSize = 1;
+    private boolean mZipfian = false;
+    private WriteMode mWriteMode = WriteMode.UPDATE;
+    private int mMaxRetries = 5;
+
+    /**
+     * @param factory labs and rows
+     * @param keys ids 1 .. keys already in the table
+     */
+    public LoadDriver(LabFactory<T> factory, int keys) {
+        mFactory = factory;
+        mKeys = keys;
+    }
+
+    public LoadDriver<T> readers(int readers) {
+        mReaders = readers;
+        return this;
+    }
+
+    public LoadDriver<T> writers(int writers) {
+        mWriters = writers;
+        return this;
+    }
+
+    /**
+     * @param writeRatio share of writer thread operations that write, the rest read
+     */
+    public LoadDriver<T> writeRatio(double writeRatio) {
+        mWriteRatio = writeRatio;
+        return this;
+    }
+
+    /**
+     * @param batchSize rows per write transaction
+     */
+    public LoadDriver<T> batchSize(int batchSize) {
+        mBatchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * @param zipfian hot low ids (theta 0.99) instead of uniform keys
+     */
+    public LoadDriver<T> zipfian(boolean zipfian) {
+        mZipfian = zipfian;
+        return this;
+    }
+
+    public LoadDriver<T> writeMode(WriteMode writeMode) {
+        mWriteMode = writeMode;
+        return this;
+    }
+
+    /**
+     * @param maxRetries retries of a locked operation before it counts as failed
+     */
+    public LoadDriver<T> maxRetries(int maxRetries) {
+        mMaxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Runs every thread for duration, blocking the caller.
+     * @param durationMillis run time
+     * @return merged report, also logged
+     */
+    public Report run(long durationMillis) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final long deadline = System.nanoTime() + durationMillis * 1000000;
+        final Zipfian zipfian = mZipfian ? new Zipfian(mKeys) : null;
+
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < mReaders + mWriters; i++) {
+            final Worker worker = new Worker(i, i >= mReaders ? mWriteRatio : 0, zipfian);
+            workers.add(worker);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        worker.run(deadline);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, TAG + (i >= mReaders ? "-writer-" : "-reader-") + i);
+            threads.add(thread);
+            thread.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long millis = (System.nanoTime() - begin) / 1000000;
+
+        long reads = 0, writes = 0, rows = 0, busy = 0, retries = 0, failures = 0;
+        Histogram readNanos = new Histogram(), writeNanos = new Histogram(), waitNanos = new Histogram();
+        for (Worker worker : workers) {
+            reads += worker.reads;
+            writes += worker.writes;
+            rows += worker.rows;
+            busy += worker.busy;
+            retries += worker.retries;
+            failures += worker.failures;
+            readNanos.add(worker.readNanos);
+            writeNanos.add(worker.writeNanos);
+            waitNanos.add(worker.waitNanos);
+        }
+
+        Report report = new Report(millis, reads, writes, rows, busy, retries, failures,
+                readNanos, writeNanos, waitNanos);
+        Log.i(TAG, report.toString());
+        return report;
+    }
+
+    /**
+     * One thread: its own lab, random source and histograms, merged after the run.
+     */
+    private final class Worker {
+        private final TableLab<T> lab;
+        private final SQLiteDatabase database;
+        private final double writeRatio;
+        private final Zipfian zipfian;
+        private final Random random;
+
+        private final Histogram readNanos = new Histogram();
+        private final Histogram writeNanos = new Histogram();
+        private final Histogram waitNanos = new Histogram();
+        private long reads, writes, rows, busy, retries, failures;
+
+        Worker(int seed, double writeRatio, Zipfian zipfian) {
+            this.lab = mFactory.create();
+            this.database = lab.database();
+            this.writeRatio = writeRatio;
+            this.zipfian = zipfian;
+            this.random = new Random(seed);
+        }
+
+        void run(long deadline) {
+            while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                if (writeRatio > 0 && random.nextDouble() < writeRatio) {
+                    write();
+                } else {
+                    read();
+                }
+            }
+        }
+
+        private void read() {
+            int key = key();
+            long begin = System.nanoTime();
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    lab.find(key);
+                    break;
+                } catch (SQLiteDatabaseLockedException e) {
+                    if (!retry(attempt)) {
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    failures++;
+                    return;
+                }
+            }
+            readNanos.record(System.nanoTime() - begin);
+            reads++;
+        }
+
+        private void write() {
+            ArrayList<T> batch = new ArrayList<>(mBatchSize);
+            int[] ids = new int[mBatchSize];
+            for (int i = 0; i < mBatchSize; i++) {
+                ids[i] = key();
+                batch.add(mFactory.row(ids[i]));
+            }
+
+            long begin = System.nanoTime();
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    long waiting = System.nanoTime();
+                    database.beginTransaction();
+                    waitNanos.record(System.nanoTime() - waiting);
+                    try {
+                        // Nested in ours, so the wait for the write lock is measured above.
+                        if (mWriteMode == WriteMode.INSERT) {
+                            lab.saveBatch(batch, mBatchSize, null);
+                        } else {
+                            lab.updateBatch(batch, ids);
+                        }
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                    break;
+                } catch (SQLiteDatabaseLockedException e) {
+                    if (!retry(attempt)) {
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Write failed: " + e.getMessage(), e);
+                    failures++;
+                    return;
+                }
+            }
+            writeNanos.record(System.nanoTime() - begin);
+            writes++;
+            rows += mBatchSize;
+        }
+
+        /**
+         * Counts a locked attempt and backs off.
+         * @return false once maxRetries are used up
+         */
+        private boolean retry(int attempt) {
+            if (attempt == 0) {
+                busy++;
+            }
+            if (attempt >= mMaxRetries) {
+                failures++;
+                return false;
+            }
+            retries++;
+            try {
+                Thread.sleep(1L << Math.min(attempt, 6));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures++;
+                return false;
+            }
+            return true;
+        }
+
+        private int key() {
+            return zipfian != null ? zipfian.next(random) : 1 + random.nextInt(mKeys);
+        }
+    }
+
+    /**
+     * Zipfian ids 1 .. n, lowest ids hottest. Gray et al. "Quickly generating billion-record
+     * synthetic databases", as in YCSB. Shared, it only keeps constants.
+     */
+    static final class Zipfian {
+        private static final double THETA = 0.99;
+
+        private final int n;
+        private final double zetaN, alpha, eta, half;
+
+        Zipfian(int n) {
+            this.n = n;
+            double zeta2 = zeta(2);
+            this.zetaN = zeta(n);
+            this.alpha = 1 / (1 - THETA);
+            this.eta = (1 - Math.pow(2.0 / n, 1 - THETA)) / (1 - zeta2 / zetaN);
+            this.half = 1 + Math.pow(0.5, THETA);
+        }
+
+        int next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 1;
+            }
+            if (uz < half) {
+                return Math.min(2, n);
+            }
+            return 1 + Math.min(n - 1, (int) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(int n) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, THETA);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Log linear latency histogram: 16 buckets per power of two, about 6% error.
+     * Not thread safe, every worker keeps its own.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+
+        private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB];
+        private long total, sum, max;
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts[index(value)]++;
+            total++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        long percentile(double p) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upper(i), max);
+                }
+            }
+            return max;
+        }
+
+        private static int index(long value) {
+            if (value < SUB) {
+                return (int) value;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+            return (exp - SUB_BITS + 1) * SUB + sub;
+        }
+
+        private static long upper(int index) {
+            if (index < SUB) {
+                return index;
+            }
+            int shift = index / SUB - 1;
+            if (shift >= 58) {
+                return Long.MAX_VALUE;
+            }
+            return ((long) (SUB + index % SUB + 1) << shift) - 1;
+        }
+    }
+}
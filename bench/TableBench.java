@@ -0,0 +1,219 @@
+package com.dominicapps.tablelab.lab.bench;
+
+import android.app.Activity;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.dominicapps.tablelab.lab.labs.TableLab;
+import com.dominicapps.tablelab.lab.utils.Pair;
+
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * CRUD and query benchmarks of a wide WordBench table and a LinkBench many to many table
+ * at 1k, 100k and 1M rows. Every size drops and refills both tables, so run it against a
+ * throw away database:
+ *
+ *      ArrayList<Benchmark.Result> results = new TableBench(activity, database).run();
+ */
+
+public class TableBench {
+    public static final String TAG = TableBench.class.getSimpleName();
+
+    public static final int[] SIZES = {1000, 100000, 1000000};
+
+    private static final int LETTERS = 27;
+    private static final int TAGS_PER_WORD = 4;
+    private static final int CHUNK = 1000;
+
+    private final SQLiteDatabase mDatabase;
+    private final WordBench mWords;
+    private final LinkBench mLinks;
+    private final Benchmark mBenchmark;
+    private final Random mRandom = new Random(42);
+
+    public TableBench(Activity activity, SQLiteDatabase database) {
+        this(activity, database, new Benchmark(2, 5));
+    }
+
+    public TableBench(Activity activity, SQLiteDatabase database, Benchmark benchmark) {
+        mDatabase = database;
+        mWords = new WordBench(activity, database);
+        mLinks = new LinkBench(activity, database);
+        mBenchmark = benchmark;
+    }
+
+    /**
+     * @return results of every size in SIZES
+     */
+    public ArrayList<Benchmark.Result> run() {
+        ArrayList<Benchmark.Result> results = new ArrayList<>();
+        for (int rows : SIZES) {
+            results.addAll(run(rows));
+        }
+        return results;
+    }
+
+    /**
+     * @param rows words to seed, links are TAGS_PER_WORD per word
+     * @return results at that size
+     */
+    public ArrayList<Benchmark.Result> run(final int rows) {
+        ArrayList<Benchmark.Result> results = new ArrayList<>();
+        reset();
+
+        // Writes: one autocommit per save against chunked compiled inserts.
+        final ArrayList<BenchWord> chunk = words(CHUNK, 0);
+        results.add(mBenchmark.measure("save", rows, 100, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.save(chunk.get(i % CHUNK));
+            }
+        }));
+        results.add(mBenchmark.measure("saveBatch x" + CHUNK, rows, 1, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.saveBatch(chunk, CHUNK, null);
+            }
+        }));
+
+        reset();
+        seed(rows);
+        final int words = mWords.entries();
+
+        results.add(mBenchmark.measure("find", words, 1000, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.find(1 + mRandom.nextInt(words));
+            }
+        }));
+        results.add(mBenchmark.measure("list", words, 1, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.list(false, true);
+            }
+        }));
+        results.add(mBenchmark.measure("like", words, 10, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.like(text("n", mRandom.nextInt(words)), false, true);
+            }
+        }));
+        results.add(mBenchmark.measure("children", words, 10, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.children(i % LETTERS, WordBench.LETTER_ID, false, true);
+            }
+        }));
+        results.add(mBenchmark.measure("entries", words, 100, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.entries();
+            }
+        }));
+        results.add(mBenchmark.measure("random", words, 1000, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.random();
+            }
+        }));
+        results.add(mBenchmark.measure("random x10", words, 100, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mWords.random(10, false, true);
+            }
+        }));
+
+        final int links = mLinks.entries();
+        results.add(mBenchmark.measure("links find", links, 1000, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mLinks.find(1 + mRandom.nextInt(links));
+            }
+        }));
+        results.add(mBenchmark.measure("links children", links, 1000, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mLinks.children(1 + mRandom.nextInt(words), LinkBench.WORD_ID, true, true);
+            }
+        }));
+        results.add(mBenchmark.measure("links rightsOf", links, 1000, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mLinks.rightsOf(1 + mRandom.nextInt(words));
+            }
+        }));
+        results.add(mBenchmark.measure("links join", links, 1000, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mLinks.lefts(mWords, 1 + mRandom.nextInt(words), false, true);
+            }
+        }));
+        results.add(mBenchmark.measure("links random", links, 1000, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                mLinks.random();
+            }
+        }));
+
+        return results;
+    }
+
+    private void reset() {
+        WordBench.drop(mDatabase);
+        LinkBench.drop(mDatabase);
+        WordBench.create(mDatabase);
+        LinkBench.create(mDatabase);
+        mWords.createIndexes(mDatabase);
+        mLinks.createIndexes(mDatabase);
+        mWords.invalidateSchema();
+        mWords.forgetBounds();
+        mWords.uncacheAll();
+        mLinks.forgetBounds();
+        mLinks.uncacheAll();
+        mLinks.forgetAdjacency();
+    }
+
+    /**
+     * Words 1 .. rows, each linked to TAGS_PER_WORD of the first rows words.
+     */
+    private void seed(int rows) {
+        long start = System.nanoTime();
+        for (int from = 0; from < rows; from += CHUNK) {
+            mWords.saveBatch(words(Math.min(CHUNK, rows - from), from), CHUNK, null);
+        }
+
+        ArrayList<Pair> pairs = new ArrayList<>(CHUNK);
+        for (int word = 1; word <= rows; word++) {
+            for (int t = 0; t < TAGS_PER_WORD; t++) {
+                pairs.add(new Pair(word, 1 + (word * 31 + t * 7919) % rows));
+            }
+            if (pairs.size() >= CHUNK) {
+                mLinks.upsertBatch(pairs);
+                pairs.clear();
+            }
+        }
+        mLinks.upsertBatch(pairs);
+
+        Log.i(TAG, "Seeded " + rows + " words in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    private ArrayList<BenchWord> words(int count, int offset) {
+        ArrayList<BenchWord> words = new ArrayList<>(count);
+        DateTime now = TableLab.now();
+        for (int i = 0; i < count; i++) {
+            int n = offset + i;
+            words.add(new BenchWord(0, n % LETTERS, text("n", n), text("a", n), text("m", n),
+                    "definition of word number " + n + " with some more text to widen the row",
+                    "image_" + n + ".png", now, now));
+        }
+        return words;
+    }
+
+    private static String text(String prefix, int n) {
+        return prefix + Integer.toString(n, 36);
+    }
+}
@@ -0,0 +1,116 @@
+package com.dominicapps.tablelab.lab.bench;
+
+import android.app.Activity;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.dominicapps.tablelab.lab.labs.TableLab;
+
+/**
+ * Wide benchmark table, same columns as the README WordTable.
+ */
+
+public class WordBench extends TableLab<BenchWord> {
+    public static final String TAG = WordBench.class.getSimpleName();
+
+    public static final String TABLE = "bench_words";
+    public static final String LETTER_ID = "letter_id";
+    public static final String IMAGE = "image";
+    public static final String NOMBRE = "nombre";
+    public static final String NOMINE = "nomine";
+
+    public WordBench(Activity activity, SQLiteDatabase database) {
+        super(activity, database);
+    }
+
+    public static void create(SQLiteDatabase database) {
+        database.execSQL(CREATE_TABLE_IF_NOT_EXISTS + TABLE + " (" +
+                ID + PRIMARY_KEY + ", " +
+                LETTER_ID + INTEGER_NOT_NULL + ", " +
+                NOMBRE + TEXT_NOT_NULL + ", " +
+                NAME + TEXT_NOT_NULL + ", " +
+                NOMINE + TEXT_NOT_NULL + ", " +
+                DEFINITION + TEXT_NOT_NULL + ", " +
+                IMAGE + TEXT_NOT_NULL + ", " +
+                CREATED + INTEGER_NOT_NULL + ", " +
+                UPDATED + INTEGER_NOT_NULL + ")");
+    }
+
+    public static void drop(SQLiteDatabase database) {
+        database.execSQL(DROP_TABLE_IF_EXISTS + TABLE);
+    }
+
+    @Override
+    public String table() {
+        return TABLE;
+    }
+
+    @Override
+    public String[] where() {
+        return new String[]{NOMBRE, NAME, NOMINE, DEFINITION, IMAGE};
+    }
+
+    @Override
+    public String when() {
+        return UPDATED;
+    }
+
+    @Override
+    public String orderBy() {
+        return NOMBRE;
+    }
+
+    @Override
+    public String groupBy() {
+        return null;
+    }
+
+    @Override
+    public String having() {
+        return null;
+    }
+
+    @Override
+    public String[] parents() {
+        return new String[]{LETTER_ID};
+    }
+
+    @Override
+    public ContentValues values(BenchWord word) {
+        ContentValues values = new ContentValues();
+        values.put(LETTER_ID, word.getLetterId());
+        values.put(NOMBRE, word.getNombre());
+        values.put(NAME, word.getName());
+        values.put(NOMINE, word.getNomine());
+        values.put(DEFINITION, word.getDefinition());
+        values.put(IMAGE, word.getImage());
+        values.put(CREATED, word.getCreated().getMillis());
+        values.put(UPDATED, word.getUpdated().getMillis());
+        return values;
+    }
+
+    @Override
+    public String[] mapping() {
+        return new String[]{ID, LETTER_ID, NOMBRE, NAME, NOMINE, DEFINITION, IMAGE, CREATED, UPDATED};
+    }
+
+    @Override
+    public BenchWord model(Cursor cursor) {
+        return model(cursor, indices(cursor));
+    }
+
+    @Override
+    public BenchWord model(Cursor cursor, int[] index) {
+        return new BenchWord(
+                cursor.getInt(index[0]),
+                cursor.getInt(index[1]),
+                cursor.getString(index[2]),
+                cursor.getString(index[3]),
+                cursor.getString(index[4]),
+                cursor.getString(index[5]),
+                cursor.getString(index[6]),
+                TableLab.date(cursor.getLong(index[7])),
+                TableLab.date(cursor.getLong(index[8])));
+    }
+}
@@ -0,0 +1,74 @@
+package com.dominicapps.tablelab.lab.bench.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs UtilsBench with the GC profiler and fails when a benchmark allocates more bytes per
+ * operation than its budget. Bytes per op do not depend on the machine, so unlike timings
+ * they can gate CI. Times are printed for trend tracking only.
+ *
+ *      java -cp <bench classpath> com.dominicapps.tablelab.lab.bench.jmh.RegressionGate
+ */
+
+public class RegressionGate {
+
+    private static final String NORM = "gc.alloc.rate.norm";
+
+    /**
+     * Bytes per operation allowed, about half again over what the code allocates today
+     * (today's figure in the comment).
+     */
+    private static final Map<String, Double> BUDGETS = new HashMap<>();
+
+    static {
+        BUDGETS.put("adjacencyTargets", 128.0);   // 88, the returned copy of ~10 ids
+        BUDGETS.put("adjacencyContains", 48.0);   // 32
+        BUDGETS.put("adjacencyAddRemove", 768.0); // 565, mostly compact() every few thousand changes
+        BUDGETS.put("queryShapeLookup", 96.0);    // 56, the shape key itself
+        BUDGETS.put("metricsRecord", 16.0);       // 0
+        BUDGETS.put("metricsBucket", 8.0);        // 0
+        BUDGETS.put("pageByTime", 128.0);         // 88, the page and its cursor
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(UtilsBench.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+
+        int failures = 0;
+        for (RunResult result : results) {
+            String name = result.getParams().getBenchmark();
+            name = name.substring(name.lastIndexOf('.') + 1);
+
+            double bytes = Double.NaN;
+            for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+                if (entry.getKey().endsWith(NORM)) {
+                    bytes = entry.getValue().getScore();
+                }
+            }
+
+            Double budget = BUDGETS.get(name);
+            boolean over = budget != null && !(bytes <= budget);
+            System.out.println(String.format("%-20s %10.1f ns/op %8.1f B/op (budget %s)%s",
+                    name, result.getPrimaryResult().getScore(), bytes, budget, over ? "  REGRESSION" : ""));
+            if (over) {
+                failures++;
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " benchmark(s) over their allocation budget");
+            System.exit(1);
+        }
+    }
+}
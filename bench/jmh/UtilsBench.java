@@ -0,0 +1,122 @@
+package com.dominicapps.tablelab.lab.bench.jmh;
+
+import com.dominicapps.tablelab.lab.utils.Adjacency;
+import com.dominicapps.tablelab.lab.utils.Metrics;
+import com.dominicapps.tablelab.lab.utils.Page;
+import com.dominicapps.tablelab.lab.utils.QueryShape;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM side of the bench package: the pure Java hot paths behind ManyLab lookups, find and list
+ * SQL caching, keyset pages and metrics, under JMH. Runs headless, see RegressionGate.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBench {
+
+    public static final int SOURCES = 10000;
+    public static final int TARGETS_PER_SOURCE = 10;
+    public static final int PAGE_SIZE = 50;
+
+    private static final String TABLE = "bench_words";
+    private static final String[] WHERE = {"nombre", "name", "nomine"};
+
+    private Adjacency mAdjacency;
+    private Metrics mMetrics;
+    private HashMap<QueryShape, String> mSql;
+    private ArrayList<Integer> mItems;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        int edges = SOURCES * TARGETS_PER_SOURCE;
+        int[] sources = new int[edges];
+        int[] targets = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            sources[i] = 1 + i / TARGETS_PER_SOURCE;
+            targets[i] = 1 + (i % TARGETS_PER_SOURCE) * 7;
+        }
+        mAdjacency = new Adjacency(sources, targets, edges);
+
+        mMetrics = new Metrics(Long.MAX_VALUE / 1000000);
+        mSql = new HashMap<>();
+        mSql.put(shape(true), "SELECT * FROM " + TABLE + " WHERE nombre = ? ORDER BY updated ASC");
+
+        mItems = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            mItems.add(i);
+        }
+    }
+
+    private int next() {
+        mNext = (mNext * 1103515245 + 12345) & 0x7fffffff;
+        return 1 + mNext % SOURCES;
+    }
+
+    private static QueryShape shape(boolean isExact) {
+        return new QueryShape(TABLE, null, WHERE, "nombre", null, null, null, false, isExact, true, true, false);
+    }
+
+    @Benchmark
+    public int[] adjacencyTargets() {
+        return mAdjacency.targets(next());
+    }
+
+    @Benchmark
+    public boolean adjacencyContains() {
+        return mAdjacency.contains(next(), 8);
+    }
+
+    /**
+     * One pending edge added and removed again, the delta path of inserted() and deletePair().
+     */
+    @Benchmark
+    public int adjacencyAddRemove() {
+        int source = next();
+        mAdjacency.add(source, 3);
+        mAdjacency.remove(source, 3);
+        return source;
+    }
+
+    /**
+     * What every select(...) pays before reaching SQLite: build the shape, hit the SQL cache.
+     */
+    @Benchmark
+    public String queryShapeLookup() {
+        return mSql.get(shape(true));
+    }
+
+    @Benchmark
+    public void metricsRecord() {
+        mMetrics.record(TABLE, Metrics.Op.SELECT, next() * 1000L, 500L, 1);
+    }
+
+    @Benchmark
+    public int metricsBucket() {
+        return Metrics.bucket(next() * 1000L);
+    }
+
+    @Benchmark
+    public Page<Integer> pageByTime() {
+        return new Page<>(mItems, (long) next(), next(), true);
+    }
+}
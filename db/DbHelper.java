@@ -9,7 +9,20 @@ import android.util.Log;
 
 import com.dominicapps.tablelab.lab.labs.TableLab;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
 
 /**
  *  Regular database helper with couple of utils methods. Use it do declare the tables
@@ -23,10 +36,40 @@ public class DbHelper extends SQLiteOpenHelper {
     public static String DATABASE_NAME ="your_database.db";
     public static int DATABASE_VERSION = 1;
 
+    /**
+     * Assets folder of the prebuilt database, next to it an optional DATABASE_NAME + ".crc"
+     * holding the CRC32 of the file in hex, as the crc32 tool prints it.
+     */
+    public static String DATABASE_ASSET_DIR = "databases/";
+
+    private static final int USER_VERSION_OFFSET = 60; // big endian int in the SQLite header
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    private static DbHelper sInstance;
+
+    /**
+     * One helper per process, every DbManager borrows its connection pool.
+     * @param context any context, the application one is kept
+     * @return shared helper
+     */
+    public static synchronized DbHelper getInstance(Context context) {
+        if (sInstance == null) {
+            Context application = context.getApplicationContext();
+            install(application);
+            sInstance = new DbHelper(application);
+        }
+        return sInstance;
+    }
+
     public DbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // WAL: one writer and several readers at once, writes no longer block reads.
+        setWriteAheadLoggingEnabled(true);
     }
 
+    /**
+     * Runs only if no prebuilt database was installed from assets: create and seed here.
+     */
     @Override
     public void onCreate(SQLiteDatabase db) {
 
@@ -47,6 +90,155 @@ public class DbHelper extends SQLiteOpenHelper {
         }
     }
 
+    //////// PREBUILT /////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Copies the prebuilt DATABASE_ASSET_DIR + DATABASE_NAME into place if there is no database
+     * yet. The copy streams through a channel into a temp file, is checked for a SQLite header
+     * whose user_version is 1 .. DATABASE_VERSION (older ones go through onUpgrade) and against
+     * the .crc sidecar, then renamed over the database path. Called by getInstance(...) before
+     * the first open; without the asset onCreate(...) seeds as before.
+     * @param context any context
+     * @return true if the prebuilt database was installed
+     */
+    public static boolean install(Context context) {
+        File database = context.getDatabasePath(DATABASE_NAME);
+        if (database.exists()) {
+            return false;
+        }
+
+        String asset = DATABASE_ASSET_DIR + DATABASE_NAME;
+        InputStream input;
+        try {
+            input = context.getAssets().open(asset);
+        } catch (IOException e) {
+            if (TableLab.printLog) {
+                Log.d(TAG, "No prebuilt " + asset + ", seeding instead");
+            }
+            return false;
+        }
+
+        File parent = database.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log.e(TAG, "Cannot create " + parent);
+            close(input);
+            return false;
+        }
+
+        File temp = new File(database.getPath() + ".tmp");
+        try {
+            long crc = copy(input, temp);
+            Long expected = checksum(context, asset + ".crc");
+            if (expected != null && expected != crc) {
+                throw new IOException(asset + " crc " + Long.toHexString(crc)
+                        + " instead of " + Long.toHexString(expected));
+            }
+
+            int version = userVersion(temp);
+            if (version < 1 || version > DATABASE_VERSION) {
+                throw new IOException(asset + " is version " + version + ", expected 1 .. " + DATABASE_VERSION);
+            }
+
+            for (String suffix : new String[]{"-journal", "-wal", "-shm"}) {
+                new File(database.getPath() + suffix).delete();
+            }
+            if (!temp.renameTo(database)) {
+                throw new IOException("Cannot move " + temp + " to " + database);
+            }
+
+            if (TableLab.printLog) {
+                Log.d(TAG, "Installed prebuilt " + asset + " v." + version);
+            }
+            return true;
+
+        } catch (IOException e) {
+            Log.e(TAG, "Prebuilt " + asset + " not installed: " + e.getMessage(), e);
+            temp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Streams input into file, closing both.
+     * @return CRC32 of the bytes copied
+     */
+    private static long copy(InputStream input, File file) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER);
+        ReadableByteChannel in = Channels.newChannel(input);
+        FileOutputStream output = new FileOutputStream(file);
+        FileChannel out = output.getChannel();
+
+        try {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+            out.force(false);
+        } finally {
+            close(in);
+            close(output);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @return user_version of a database file, -1 if it has no SQLite header
+     */
+    private static int userVersion(File file) throws IOException {
+        RandomAccessFile database = new RandomAccessFile(file, "r");
+        try {
+            byte[] magic = new byte[16];
+            if (database.length() < 100 || database.read(magic) != magic.length
+                    || !new String(magic, "US-ASCII").startsWith("SQLite format 3")) {
+                return -1;
+            }
+            database.seek(USER_VERSION_OFFSET);
+            return database.readInt();
+        } finally {
+            close(database);
+        }
+    }
+
+    /**
+     * @return CRC32 from the sidecar asset, null if there is none
+     */
+    private static Long checksum(Context context, String asset) throws IOException {
+        BufferedReader reader;
+        try {
+            reader = new BufferedReader(new InputStreamReader(context.getAssets().open(asset), "US-ASCII"));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException(asset + " is empty");
+            }
+            line = line.trim().toLowerCase();
+            try {
+                return Long.parseLong(line.startsWith("0x") ? line.substring(2) : line.split("\\s+")[0], 16);
+            } catch (NumberFormatException e) {
+                throw new IOException(asset + " holds no crc: " + line);
+            }
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage(), e);
+        }
+    }
+
     //////// UTILS ////////////////////////////////////////////////////////////////////////////
 
     public static long getDbSize(Activity activity) {
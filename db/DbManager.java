@@ -9,12 +9,17 @@ import com.dominicapps.tablelab.lab.labs.DbLab;
 import com.dominicapps.tablelab.lab.labs.TableLab;
 
 /**
- * Handles database open close cycle. Allows you to open a close SQL database / TableLab
+ * Handles database open close cycle. Allows you to open a close SQL database / TableLab.
+ * All managers share one DbHelper and its WAL connection pool, which stays open for the
+ * life of the process: queries queued on the query pool may still run after closeLab().
  */
 
 public class DbManager {
     public static final String TAG = DbManager.class.getSimpleName();
 
+    private static final Object LOCK = new Object();
+    private static int sOpenManagers = 0;
+
     private DbHelper mDbHelper;
     private Activity mActivity;
     private SQLiteDatabase mDatabase;
@@ -23,7 +28,7 @@ public class DbManager {
     }
 
     public DbManager(Activity activity) {
-        this.mDbHelper = new DbHelper(activity);
+        this.mDbHelper = DbHelper.getInstance(activity);
         mActivity = activity;
     }
 
@@ -37,15 +42,46 @@ public class DbManager {
     // new tables here:
 
     private SQLiteDatabase writable() {
-        return mDatabase = mDbHelper.getWritableDatabase();
+        return borrow();
     }
 
     private SQLiteDatabase readable() {
-        return mDatabase = mDbHelper.getReadableDatabase();
+        // With WAL the readable and the writable database are the same pooled instance.
+        return borrow();
     }
 
+    private SQLiteDatabase borrow() {
+        synchronized (LOCK) {
+            if (mDatabase == null) {
+                mDatabase = mDbHelper.getWritableDatabase();
+                sOpenManagers++;
+            }
+            return mDatabase;
+        }
+    }
+
+    /**
+     * Gives back the database borrowed by this manager labs. The shared database is not
+     * closed, other managers and queries still running on the query pool use it.
+     */
     public void closeLab() {
-        close(mDatabase);
+        synchronized (LOCK) {
+            if (mDatabase == null) {
+                return;
+            }
+
+            mDatabase = null;
+            sOpenManagers--;
+            if (TableLab.printLog) {
+                TableLab.classToLog("Releasing ", DbHelper.class);
+            }
+        }
+    }
+
+    public static int openManagers() {
+        synchronized (LOCK) {
+            return sOpenManagers;
+        }
     }
 
     public void close(SQLiteDatabase database) {
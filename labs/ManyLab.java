@@ -5,8 +5,18 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.dominicapps.tablelab.lab.utils.Adjacency;
+import com.dominicapps.tablelab.lab.utils.Metrics;
+import com.dominicapps.tablelab.lab.utils.Page;
 import com.dominicapps.tablelab.lab.utils.Pair;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
 /**
  * Lab to fast create tables with very common scenario: id, left, right.
  */
@@ -14,6 +24,17 @@ import com.dominicapps.tablelab.lab.utils.Pair;
 public abstract class ManyLab extends TableLab<Pair> {
     public static final String TAG = ManyLab.class.getSimpleName();
 
+    // Loaded indexes by database, table and side, shared by every lab of the table.
+    private static final HashMap<String, Adjacency> sAdjacencies = new HashMap<>();
+
+    // Writes seen per table, a scan that overlapped one is not published. Guarded by sAdjacencies.
+    private static final HashMap<String, Long> sWrites = new HashMap<>();
+
+    /**
+     * Scans adjacency(...) retries before it returns an index without publishing it.
+     */
+    public static final int ADJACENCY_SCANS = 3;
+
     public ManyLab(Activity activity, SQLiteDatabase database) {
         super(activity, database);
     }
@@ -46,32 +67,416 @@ public abstract class ManyLab extends TableLab<Pair> {
         return null;
     }
 
+    /**
+     * One row per pair. createIndexes(db) adds the UNIQUE (left, right) index upsert(...) needs.
+     */
+    @Override
+    public String[] conflict() {
+        return new String[]{left(), right()};
+    }
+
+    /**
+     * Indexes (left, when) and (right, when), so joins can start from either side.
+     */
+    @Override
+    public String[] parents() {
+        return new String[]{left(), right()};
+    }
+
     @Override
     public ContentValues values(Pair pair) {
         ContentValues values = new ContentValues();
         values.put(left(), pair.getLeft());
         values.put(right(), pair.getRight());
-        values.put(CREATED, pair.getCreated().getMillis());
-        values.put(UPDATED, pair.getUpdated().getMillis());
+        values.put(CREATED, pair.getCreatedMillis());
+        values.put(UPDATED, pair.getUpdatedMillis());
         return values;
     }
 
+    @Override
+    public String[] mapping() {
+        return new String[]{ID, left(), right(), CREATED, UPDATED};
+    }
+
     @Override
     public Pair model(Cursor cursor) {
+        return model(cursor, indices(cursor));
+    }
+
+    @Override
+    public Pair model(Cursor cursor, int[] index) {
         Pair pair = new Pair();
-        pair.setId(cursor.getInt(cursor.getColumnIndex(ID)));
-        pair.setLeft(cursor.getInt(cursor.getColumnIndex(left())));
-        pair.setRight(cursor.getInt(cursor.getColumnIndex(right())));
-        pair.setCreated(TableLab.date(cursor.getInt(cursor.getColumnIndex(CREATED))));
-        pair.setUpdated(TableLab.date(cursor.getInt(cursor.getColumnIndex(UPDATED))));
+        pair.setId(cursor.getInt(index[0]));
+        pair.setLeft(cursor.getInt(index[1]));
+        pair.setRight(cursor.getInt(index[2]));
+        pair.setCreatedMillis(cursor.getLong(index[3]));
+        pair.setUpdatedMillis(cursor.getLong(index[4]));
         return pair;
     }
 
-//    public ArrayList<Pair> pairs(int id, int side, boolean orderByTime, boolean descOrder) {
-//        return select(null, String.valueOf(id), true, null, null, null, side, orderByTime, descOrder, null, null);
-//    }
-//
-//    public ArrayList<Pair> pairs(int id, int side, boolean orderByTime, boolean descOrder, DateTime start, DateTime end) {
-//        return select(null, String.valueOf(id), true, null, null, null, side, orderByTime, descOrder, start, end);
-//    }
+    /**
+     * Deletes every pair of a left id in one statement.
+     * @param left left id
+     * @return pairs removed
+     */
+    public int deleteLeft(int left) {
+        return deleteSide(true, left);
+    }
+
+    /**
+     * Deletes every pair of a right id in one statement.
+     * @param right right id
+     * @return pairs removed
+     */
+    public int deleteRight(int right) {
+        return deleteSide(false, right);
+    }
+
+    /**
+     * Deletes one pair, loaded indexes are updated in place.
+     * @param left left id
+     * @param right right id
+     * @return pairs removed
+     */
+    public int deletePair(int left, int right) {
+        Metrics metrics = metrics();
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        int deleted = database().delete(table(), left() + "=? AND " + right() + "=?",
+                new String[]{String.valueOf(left), String.valueOf(right)});
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.DELETE, begin, 0, deleted, null, null);
+        }
+        forgetBounds();
+        uncacheAll();
+
+        Adjacency[] loaded = written();
+        if (loaded[0] != null) {
+            loaded[0].remove(left, right);
+        }
+        if (loaded[1] != null) {
+            loaded[1].remove(right, left);
+        }
+        return deleted;
+    }
+
+    //////// JOIN ///////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Target rows paired with a left id, in one JOIN.
+     * @param target lab of the right ids
+     * @param left left id
+     * @param orderByTime target when() rather than lower(orderBy())
+     * @param ascOrder choose ASC | DESC
+     * @return target objects
+     */
+    public <X> ArrayList<X> rights(TableLab<X> target, int left, boolean orderByTime, boolean ascOrder) {
+        return join(target, right(), left(), left, null, 0, orderByTime, ascOrder).getItems();
+    }
+
+    /**
+     * Next page of target rows paired with a left id, in one JOIN.
+     * @param target lab of the right ids
+     * @param left left id
+     * @param after previous page, null for the first
+     * @param pageSize rows per page
+     * @param orderByTime target when() rather than lower(orderBy())
+     * @param ascOrder choose ASC | DESC
+     * @return page
+     */
+    public <X> Page<X> rights(TableLab<X> target, int left, @Nullable Page<X> after, int pageSize,
+                              boolean orderByTime, boolean ascOrder) {
+        return join(target, right(), left(), left, after, pageSize, orderByTime, ascOrder);
+    }
+
+    /**
+     * Target rows paired with a right id, in one JOIN.
+     * @param target lab of the left ids
+     * @param right right id
+     * @param orderByTime target when() rather than lower(orderBy())
+     * @param ascOrder choose ASC | DESC
+     * @return target objects
+     */
+    public <X> ArrayList<X> lefts(TableLab<X> target, int right, boolean orderByTime, boolean ascOrder) {
+        return join(target, left(), right(), right, null, 0, orderByTime, ascOrder).getItems();
+    }
+
+    /**
+     * Next page of target rows paired with a right id, in one JOIN.
+     * @param target lab of the left ids
+     * @param right right id
+     * @param after previous page, null for the first
+     * @param pageSize rows per page
+     * @param orderByTime target when() rather than lower(orderBy())
+     * @param ascOrder choose ASC | DESC
+     * @return page
+     */
+    public <X> Page<X> lefts(TableLab<X> target, int right, @Nullable Page<X> after, int pageSize,
+                             boolean orderByTime, boolean ascOrder) {
+        return join(target, left(), right(), right, after, pageSize, orderByTime, ascOrder);
+    }
+
+    /**
+     * SELECT t.* FROM target t JOIN many m ON m.joined = t.id WHERE m.by = ?, keyset paged as page(...).
+     * @param pageSize rows per page, 0 for all
+     */
+    private <X> Page<X> join(TableLab<X> target, String joined, String by, int id, @Nullable Page<X> after,
+                             int pageSize, boolean orderByTime, boolean ascOrder) {
+        String key = orderByTime ? "t." + target.when() : "lower(t." + target.orderBy() + ")";
+        String direction = ascOrder ? ASC : DESC;
+        String seek = ascOrder ? " > ?" : " < ?";
+        Object[] args = new Object[]{id};
+
+        StringBuilder builder = new StringBuilder(SELECT).append("t.*, ").append(key).append(AS).append(PAGE_KEY)
+                .append(FROM).append(target.table()).append(" t INNER JOIN ").append(table()).append(" m")
+                .append(ON).append("m.").append(joined).append(" = t.").append(ID)
+                .append(WHERE).append("m.").append(by).append(" = ?");
+
+        if (after != null && !after.isEmpty()) {
+            builder.append(" AND (").append(key).append(seek)
+                    .append(" OR (").append(key).append(" = ? AND t.").append(ID).append(seek).append("))");
+            args = new Object[]{id, after.getSeekKey(), after.getSeekKey(), after.getLastId()};
+        }
+
+        builder.append(ORDER_BY).append(key).append(direction).append(COMMA).append("t.").append(ID).append(direction);
+        if (pageSize > 0) {
+            builder.append(LIMIT).append(pageSize + 1);
+        }
+
+        String sql = builder.toString();
+        if (printLog) {
+            Log.v(TAG, sql);
+        }
+
+        Metrics metrics = metrics();
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        ArrayList<X> items = new ArrayList<>();
+        String lastKey = null;
+        long lastTime = 0;
+        int lastId = 0;
+        boolean hasMore = false;
+
+        Cursor cursor = query(sql, args);
+        try {
+            int[] index = target.indices(cursor);
+            int keyIndex = cursor.getColumnIndex(PAGE_KEY);
+            int idIndex = cursor.getColumnIndex(ID);
+
+            while (cursor.moveToNext()) {
+                if (pageSize > 0 && items.size() == pageSize) {
+                    hasMore = true;
+                    break;
+                }
+                items.add(target.model(cursor, index));
+                if (orderByTime) {
+                    lastTime = cursor.getLong(keyIndex);
+                } else {
+                    lastKey = cursor.getString(keyIndex);
+                }
+                lastId = cursor.getInt(idIndex);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.SELECT, begin, System.nanoTime() - begin, items.size(), sql, args);
+        }
+        return orderByTime ? new Page<>(items, lastTime, lastId, hasMore) : new Page<>(items, lastKey, lastId, hasMore);
+    }
+
+    //////// ADJACENCY /////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Right ids of a left id, reading only the right column.
+     * Served from adjacency(true) once it is loaded.
+     * @param left left id
+     * @return sorted right ids
+     */
+    public int[] rightsOf(int left) {
+        Adjacency byLeft = loaded(true);
+        return byLeft != null ? byLeft.targets(left) : side(right(), left(), left);
+    }
+
+    /**
+     * Left ids of a right id, reading only the left column.
+     * Served from adjacency(false) once it is loaded.
+     * @param right right id
+     * @return sorted left ids
+     */
+    public int[] leftsOf(int right) {
+        Adjacency byRight = loaded(false);
+        return byRight != null ? byRight.targets(right) : side(left(), right(), right);
+    }
+
+    /**
+     * In memory index of the whole table, loaded on first call in one ordered scan.
+     * Inserts through this lab keep it in step, other writes drop it. A scan that overlapped
+     * a write is thrown away, after ADJACENCY_SCANS of them the last one is returned unshared.
+     * @param byLeft index left to right, else right to left
+     * @return index
+     */
+    public Adjacency adjacency(boolean byLeft) {
+        String key = key(byLeft);
+        Adjacency adjacency = null;
+
+        for (int i = 0; i < ADJACENCY_SCANS; i++) {
+            long writes;
+            synchronized (sAdjacencies) {
+                Adjacency loaded = sAdjacencies.get(key);
+                if (loaded != null) {
+                    return loaded;
+                }
+                writes = writes();
+            }
+
+            adjacency = scan(byLeft);
+
+            synchronized (sAdjacencies) {
+                Adjacency loaded = sAdjacencies.get(key);
+                if (loaded != null) {
+                    return loaded;
+                }
+                if (writes == writes()) {
+                    sAdjacencies.put(key, adjacency);
+                    return adjacency;
+                }
+            }
+        }
+        return adjacency;
+    }
+
+    private Adjacency scan(boolean byLeft) {
+        String source = byLeft ? left() : right();
+        String target = byLeft ? right() : left();
+        int[] sources = new int[64];
+        int[] targets = new int[64];
+        int edges = 0;
+
+        Cursor cursor = database().rawQuery(SELECT + source + COMMA + target + FROM + table()
+                + ORDER_BY + source + COMMA + target, null);
+        try {
+            while (cursor.moveToNext()) {
+                if (edges == sources.length) {
+                    sources = Arrays.copyOf(sources, edges * 2);
+                    targets = Arrays.copyOf(targets, edges * 2);
+                }
+                sources[edges] = cursor.getInt(0);
+                targets[edges++] = cursor.getInt(1);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return new Adjacency(sources, targets, edges);
+    }
+
+    /**
+     * Drops both loaded indexes, next adjacency(...) reloads.
+     */
+    public void forgetAdjacency() {
+        synchronized (sAdjacencies) {
+            sWrites.put(tableKey(), writes() + 1);
+            sAdjacencies.remove(key(true));
+            sAdjacencies.remove(key(false));
+        }
+    }
+
+    @Override
+    protected void inserted(Pair pair) {
+        Adjacency[] loaded = written();
+        if (loaded[0] != null) {
+            loaded[0].add(pair.getLeft(), pair.getRight());
+        }
+        if (loaded[1] != null) {
+            loaded[1].add(pair.getRight(), pair.getLeft());
+        }
+    }
+
+    @Override
+    protected void changed() {
+        forgetAdjacency();
+    }
+
+    private int deleteSide(boolean byLeft, int id) {
+        String column = byLeft ? left() : right();
+        Metrics metrics = metrics();
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        int deleted = database().delete(table(), column + "=?", new String[]{String.valueOf(id)});
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.DELETE, begin, 0, deleted, null, null);
+        }
+        forgetBounds();
+        uncacheAll();
+
+        Adjacency[] loaded = written();
+        Adjacency own = loaded[byLeft ? 0 : 1];
+        Adjacency other = loaded[byLeft ? 1 : 0];
+        if (own == null) {
+            if (other != null) {
+                forgetAdjacency();
+            }
+            return deleted;
+        }
+
+        if (other != null) {
+            for (int target : own.targets(id)) {
+                other.remove(target, id);
+            }
+        }
+        own.removeSource(id);
+        return deleted;
+    }
+
+    private int[] side(String column, String where, int id) {
+        int[] ids = new int[16];
+        int size = 0;
+
+        Cursor cursor = database().rawQuery(SELECT + column + FROM + table() + WHERE + where + "=?"
+                + ORDER_BY + column, new String[]{String.valueOf(id)});
+        try {
+            while (cursor.moveToNext()) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = cursor.getInt(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    private Adjacency loaded(boolean byLeft) {
+        synchronized (sAdjacencies) {
+            return sAdjacencies.get(key(byLeft));
+        }
+    }
+
+    /**
+     * Counts a committed write, so scans running meanwhile are not published.
+     * @return loaded {by left, by right} indexes to update in place, null if not loaded
+     */
+    private Adjacency[] written() {
+        synchronized (sAdjacencies) {
+            sWrites.put(tableKey(), writes() + 1);
+            return new Adjacency[]{sAdjacencies.get(key(true)), sAdjacencies.get(key(false))};
+        }
+    }
+
+    // Call holding sAdjacencies.
+    private long writes() {
+        Long writes = sWrites.get(tableKey());
+        return writes != null ? writes : 0;
+    }
+
+    private String tableKey() {
+        return database().getPath() + "/" + table();
+    }
+
+    private String key(boolean byLeft) {
+        return tableKey() + (byLeft ? "." + left() : "." + right());
+    }
 }
@@ -0,0 +1,291 @@
+package com.dominicapps.tablelab.lab.labs;
+
+import android.app.Activity;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeds a TableLab from a .txt asset. A reader thread parses lines into beans while the
+ * writer inserts them in chunked transactions through a compiled statement. Every chunk
+ * commits the asset line it reached, so a killed seed resumes after its last chunk.
+ *
+ *      new Seeder<>(wordLab, activity, "words.txt", parser).progress(progress).start();
+ */
+
+public class Seeder<T> {
+    public static final String TAG = Seeder.class.getSimpleName();
+
+    public static final String PROGRESS_TABLE = "seed_progress";
+    private static final String ASSET = "asset";
+    private static final String LINE = "line";
+
+    /**
+     * Turns one asset line into a bean. Runs on the reader thread.
+     */
+    public interface LineParser<T> {
+        /**
+         * @param line asset line
+         * @return bean to save, null to skip the line
+         */
+        T parse(String line);
+    }
+
+    /**
+     * Seed progress, called on the writer thread.
+     */
+    public interface Progress {
+        /**
+         * After every committed chunk.
+         * @param lines asset lines done, resumed ones included
+         * @param rows rows saved by this run
+         */
+        void onProgress(long lines, long rows);
+
+        /**
+         * @param rows rows saved by this run
+         * @param error null if the whole asset is in
+         */
+        void onFinished(long rows, @Nullable Exception error);
+    }
+
+    private static final class Chunk<T> {
+        final ArrayList<T> rows;
+        final long lastLine;
+
+        Chunk(ArrayList<T> rows, long lastLine) {
+            this.rows = rows;
+            this.lastLine = lastLine;
+        }
+    }
+
+    private final TableLab<T> mLab;
+    private final Activity mActivity;
+    private final String mAsset;
+    private final LineParser<T> mParser;
+    private int mChunkSize = 1000;
+    private int mQueueSize = 4;
+    private Progress mProgress;
+
+    private volatile boolean mStopped = false;
+    private volatile Exception mReadError;
+
+    public Seeder(TableLab<T> lab, Activity activity, String asset, LineParser<T> parser) {
+        mLab = lab;
+        mActivity = activity;
+        mAsset = asset;
+        mParser = parser;
+    }
+
+    /**
+     * @param chunkSize rows per transaction
+     */
+    public Seeder<T> chunkSize(int chunkSize) {
+        mChunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @param queueSize parsed chunks waiting for the writer before the reader blocks
+     */
+    public Seeder<T> queueSize(int queueSize) {
+        mQueueSize = queueSize;
+        return this;
+    }
+
+    public Seeder<T> progress(Progress progress) {
+        mProgress = progress;
+        return this;
+    }
+
+    /**
+     * Seeds on a new writer thread, results go to progress(...).
+     * @return writer thread
+     */
+    public Thread start() {
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    seed();
+                } catch (Exception e) {
+                    Log.e(TAG, "Seeding " + mAsset + " failed: " + e.getMessage(), e);
+                }
+            }
+        }, TAG + "-writer");
+        writer.start();
+        return writer;
+    }
+
+    /**
+     * Seeds on the calling thread, which becomes the writer.
+     * @return rows saved by this run
+     */
+    public long seed() throws Exception {
+        SQLiteDatabase db = mLab.database();
+        db.execSQL(TableLab.CREATE_TABLE_IF_NOT_EXISTS + PROGRESS_TABLE + " ("
+                + ASSET + TableLab.TEXT + TableLab.PRIMARY_KEY_CONSTRAINT + TableLab.COMMA
+                + LINE + TableLab.INTEGER_NOT_NULL + ")");
+        TableLab.forgetSchema(db);
+
+        final long resumeAt = committedLine(db);
+        final BlockingQueue<Chunk<T>> queue = new ArrayBlockingQueue<>(Math.max(1, mQueueSize));
+        mStopped = false;
+        mReadError = null;
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(queue, resumeAt);
+            }
+        }, TAG + "-reader");
+        reader.start();
+
+        long rows = 0;
+        Exception error = null;
+        TableLab<T>.Insert insert = mLab.new Insert();
+        SQLiteStatement progress = db.compileStatement(TableLab.INSERT_OR_REPLACE_INTO + PROGRESS_TABLE
+                + " (" + ASSET + TableLab.COMMA + LINE + ")" + TableLab.VALUES + "(?, ?)");
+
+        try {
+            while (true) {
+                Chunk<T> chunk = queue.take();
+                if (chunk.rows == null) {
+                    break;
+                }
+
+                db.beginTransaction();
+                try {
+                    for (T t : chunk.rows) {
+                        insert.execute(t);
+                    }
+                    progress.bindString(1, mAsset);
+                    progress.bindLong(2, chunk.lastLine);
+                    progress.executeInsert();
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                rows += chunk.rows.size();
+                mLab.forgetBounds();
+                for (T t : chunk.rows) {
+                    mLab.inserted(t);
+                }
+                if (mProgress != null) {
+                    mProgress.onProgress(chunk.lastLine, rows);
+                }
+            }
+
+            if (mReadError != null) {
+                throw mReadError;
+            }
+
+        } catch (Exception e) {
+            error = e;
+            throw e;
+
+        } finally {
+            mStopped = true;
+            reader.interrupt();
+            insert.close();
+            progress.close();
+            if (mProgress != null) {
+                mProgress.onFinished(rows, error);
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Forgets the committed line, next seed() starts from the first line.
+     */
+    public void reset() {
+        mLab.database().execSQL("DELETE" + TableLab.FROM + PROGRESS_TABLE + TableLab.WHERE + ASSET + " = ?",
+                new String[]{mAsset});
+    }
+
+    private void read(BlockingQueue<Chunk<T>> queue, long resumeAt) {
+        BufferedReader reader = null;
+        long line = 0;
+        ArrayList<T> rows = new ArrayList<>(mChunkSize);
+
+        try {
+            reader = TableLab.txtReader(mActivity, mAsset);
+            String text;
+
+            while (!mStopped && (text = reader.readLine()) != null) {
+                if (++line <= resumeAt) {
+                    continue;
+                }
+
+                T t = mParser.parse(text);
+                if (t != null) {
+                    rows.add(t);
+                }
+                if (rows.size() == mChunkSize) {
+                    put(queue, new Chunk<>(rows, line));
+                    rows = new ArrayList<>(mChunkSize);
+                }
+            }
+
+            if (!rows.isEmpty()) {
+                put(queue, new Chunk<>(rows, line));
+            }
+
+        } catch (IOException | RuntimeException e) {
+            mReadError = e;
+        } catch (InterruptedException e) {
+            return;
+
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG, e.getMessage(), e);
+                }
+            }
+        }
+
+        try {
+            put(queue, new Chunk<T>(null, line));
+        } catch (InterruptedException e) {
+            // writer is gone
+        }
+    }
+
+    /**
+     * Blocks while the writer is behind, gives up once it stopped.
+     */
+    private void put(BlockingQueue<Chunk<T>> queue, Chunk<T> chunk) throws InterruptedException {
+        while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+            if (mStopped) {
+                throw new InterruptedException("writer stopped");
+            }
+        }
+    }
+
+    private long committedLine(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(TableLab.SELECT + LINE + TableLab.FROM + PROGRESS_TABLE + TableLab.WHERE + ASSET + " = ?",
+                    new String[]{mAsset});
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -4,13 +4,29 @@ import android.app.Activity;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
 import android.database.sqlite.SQLiteQueryBuilder;
-import android.os.AsyncTask;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.dominicapps.tablelab.lab.db.DbManager;
+import com.dominicapps.tablelab.lab.utils.DumpSink;
+import com.dominicapps.tablelab.lab.utils.Metrics;
+import com.dominicapps.tablelab.lab.utils.Page;
+import com.dominicapps.tablelab.lab.utils.QueryShape;
+import com.dominicapps.tablelab.lab.utils.RowBatch;
+import com.dominicapps.tablelab.lab.utils.RowMapper;
+import com.dominicapps.tablelab.lab.utils.Schema;
 
 import org.joda.time.DateTime;
 
@@ -20,9 +36,24 @@ import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @param <T> Any java bean
@@ -32,10 +63,25 @@ public abstract class TableLab<T> {
     public static final String TAG = TableLab.class.getSimpleName();
 
      /**
-     * If on, every call made to database is logged.
+     * If on, every call made to database is logged. See metrics(...) for counts and timings.
      */
     public static boolean printLog = false;
 
+    /**
+     * Query shapes whose SQL is kept per lab.
+     */
+    public static final int SQL_CACHE_SIZE = 32;
+
+    /**
+     * Values bound per IN (...) list, SQLite allows 999 per statement.
+     */
+    public static final int MAX_IN = 500;
+
+    /**
+     * Rows per transaction of saveBatch(ArrayList).
+     */
+    public static final int BATCH_CHUNK = 500;
+
     //////// ABSTRACTS ////////////////////////////////////////////////////////////////////////
 
     public abstract String table(); // Table name
@@ -47,6 +93,57 @@ public abstract class TableLab<T> {
     public abstract ContentValues values(T t); // Used at save and update
     public abstract T model(Cursor cursor); // Any java bean to be rebuild from database
 
+    //////// MAPPING //////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Mapper generated by TableProcessor for an @Table bean. When set it supplies mapping(),
+     * model(cursor, index) and the typed binds of the compiled INSERT, values(t) can return
+     * mapper().values(t).
+     * @return mapper or null to map by hand
+     */
+    public RowMapper<T> mapper() {
+        return null;
+    }
+
+    /**
+     * Columns read by model(cursor, index), in index order. Override together with
+     * model(cursor, index) so the column lookups are done once per query, not per row.
+     * @return column names or null to keep using model(cursor)
+     */
+    public String[] mapping() {
+        RowMapper<T> mapper = mapper();
+        return mapper != null ? mapper.columns() : null;
+    }
+
+    /**
+     * Resolves mapping() against an open cursor.
+     * @param cursor freshly opened cursor
+     * @return column positions in mapping() order, null if there is no mapping()
+     */
+    public int[] indices(Cursor cursor) {
+        String[] mapping = mapping();
+        if (mapping == null) {
+            return null;
+        }
+
+        int[] index = new int[mapping.length];
+        for (int i = 0; i < mapping.length; i++) {
+            index[i] = cursor.getColumnIndex(mapping[i]);
+        }
+        return index;
+    }
+
+    /**
+     * Rebuilds a bean from the current row. Uses mapper(), else adapts to model(cursor) unless overridden.
+     * @param cursor cursor on the row
+     * @param index result of indices(cursor)
+     * @return t
+     */
+    public T model(Cursor cursor, int[] index) {
+        RowMapper<T> mapper = mapper();
+        return mapper != null && index != null ? mapper.map(cursor, index) : model(cursor);
+    }
+
     //////// FIELDS ///////////////////////////////////////////////////////////////////////////
 
     private SQLiteDatabase mDatabase = null;
@@ -58,7 +155,7 @@ public abstract class TableLab<T> {
     public TableLab(Activity activity, SQLiteDatabase database) {
         mActivity = activity;
         mDatabase = database;
-        mDbManager = new DbManager(activity);
+        mDbManager = new DbManager(); // only closes cursors, the database is borrowed
     }
 
     //////// CREATE_TABLE /////////////////////////////////////////////////////////////////////////////
@@ -71,8 +168,31 @@ public abstract class TableLab<T> {
         if (printLog) {
             Log.v(TAG, SAVING + t.getClass().getSimpleName());
         }
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        boolean saved;
+        if (mapper() != null) {
+            Insert insert = new Insert();
+            try {
+                saved = insert.execute(t) != -1;
+            } catch (SQLException e) {
+                Log.e(TAG, e.getMessage(), e);
+                saved = false;
+            } finally {
+                insert.close();
+            }
+        } else {
+            saved = mDatabase.insert(table(), null, values(t)) != -1;
+        }
+        if (saved) {
+            inserted(t);
+        }
+        forgetBounds();
 
-        mDatabase.insert(table(), null, values(t));
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.SAVE, begin, 0, saved ? 1 : 0, null, null);
+        }
     }
 
     /**
@@ -85,21 +205,132 @@ public abstract class TableLab<T> {
             Log.v(TAG, SAVING_WITH_RESPONSE + t.getClass().getSimpleName());
         }
 
-        return mDatabase.insertOrThrow(table(), null, values(t));
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        forgetBounds();
+        long rowId;
+        if (mapper() != null) {
+            Insert insert = new Insert();
+            try {
+                rowId = insert.execute(t);
+            } finally {
+                insert.close();
+            }
+        } else {
+            rowId = mDatabase.insertOrThrow(table(), null, values(t));
+        }
+        inserted(t);
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.SAVE, begin, 0, 1, null, null);
+        }
+
+        return rowId;
+    }
+
+    /**
+     * Time saver to save T lists. Inserts BATCH_CHUNK rows per transaction and saves the rows
+     * of a chunk that rolled back one by one, so a bad row only loses itself as before.
+     * @param labTs TableLab<T> T objects
+     * @return rows not saved
+     */
+    public int saveBatch(ArrayList<T> labTs) {
+        long[] ids = saveBatch(labTs, BATCH_CHUNK, new ChunkListener() {
+            @Override
+            public void onChunkFailed(int from, int to, SQLException e) {
+                if (printLog) {
+                    Log.v(TAG, "Chunk " + from + "-" + to + " rolled back, saving row by row: " + e.getMessage());
+                }
+            }
+        });
+
+        int lost = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == -1 && saveWithResult(labTs.get(i)) == -1) {
+                lost++;
+            }
+        }
+        return lost;
+    }
+
+    private long saveWithResult(T t) {
+        try {
+            return saveWithResponse(t);
+        } catch (SQLException e) {
+            Log.e(TAG, "Insert into " + table() + " failed: " + e.getMessage(), e);
+            return -1;
+        }
     }
 
     /**
-     * Time saver to save T lists
+     * Bulk insert. The INSERT is compiled once and rebound for every row, each chunk
+     * of rows is committed in its own transaction.
      * @param labTs TableLab<T> T objects
+     * @param chunkSize rows per transaction. If < 1 the whole list
+     * @param listener told about every chunk rolled back. If null failures are logged
+     * @return generated row ids, -1 for every row of a failed chunk
      */
-    public void saveBatch(ArrayList<T> labTs) {
+    public long[] saveBatch(List<T> labTs, int chunkSize, @Nullable ChunkListener listener) {
         if (printLog) {
-            Log.v(TAG, BATCH_SAVING);
+            Log.v(TAG, BATCH_SAVING + labTs.size());
+        }
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        int saved = 0;
+
+        long[] ids = new long[labTs.size()];
+        int size = chunkSize < 1 ? Math.max(ids.length, 1) : chunkSize;
+        Insert insert = new Insert();
+        forgetBounds();
+
+        try {
+            for (int from = 0; from < ids.length; from += size) {
+                int to = Math.min(from + size, ids.length);
+
+                SQLException failure = null;
+                mDatabase.beginTransaction();
+                try {
+                    for (int i = from; i < to; i++) {
+                        ids[i] = insert.execute(labTs.get(i));
+                    }
+                    mDatabase.setTransactionSuccessful();
+                } catch (SQLException e) {
+                    failure = e;
+                } finally {
+                    try {
+                        mDatabase.endTransaction();
+                    } catch (SQLException e) {
+                        if (failure == null) {
+                            failure = e; // commit failed
+                        }
+                    }
+                }
+
+                if (failure == null) {
+                    for (int i = from; i < to; i++) {
+                        inserted(labTs.get(i));
+                    }
+                    saved += to - from;
+
+                } else {
+                    Arrays.fill(ids, from, to, -1);
+                    if (listener != null) {
+                        listener.onChunkFailed(from, to, failure);
+                    } else {
+                        Log.e(TAG, "Chunk " + from + "-" + to + " rolled back: " + failure.getMessage(), failure);
+                    }
+                }
+            }
+        } finally {
+            insert.close();
         }
 
-        for (int i=0;i<labTs.size();i++) {
-            save(labTs.get(i));
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.BATCH, begin, 0, saved, null, null);
         }
+        return ids;
     }
 
     //////// UPDATE /////////////////////////////////////////////////////////////////////////////
@@ -113,8 +344,17 @@ public abstract class TableLab<T> {
         if (printLog) {
             Log.v(TAG, UPDATING + t.getClass().getSimpleName());
         }
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
         // TODO get id from t
-        mDatabase.update(table(), values(t), "id=?", new String[]{String.valueOf(id)});
+        int updated = mDatabase.update(table(), values(t), "id=?", new String[]{String.valueOf(id)});
+        uncache(id);
+        changed();
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.UPDATE, begin, 0, updated, null, null);
+        }
     }
 
     /**
@@ -127,541 +367,2526 @@ public abstract class TableLab<T> {
         if (printLog) {
             Log.v(TAG, UPDATING_WITH_RESPONSE + t.getClass().getSimpleName());
         }
-        // TODO get id from t
-        return mDatabase.update(table(), values(t), "id=?", new String[]{String.valueOf(id)});
-    }
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
 
-    //////// DELETE /////////////////////////////////////////////////////////////////////////////
+        // TODO get id from t
+        int updated = mDatabase.update(table(), values(t), "id=?", new String[]{String.valueOf(id)});
+        uncache(id);
+        changed();
 
-    /**
-     *
-     * @param id key
-     */
-    public void delete(int id) {
-        if (printLog) {
-            Log.v(TAG, DELETING + String.valueOf(id));
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.UPDATE, begin, 0, updated, null, null);
         }
-
-        mDatabase.execSQL("DELETE FROM " + table() + " WHERE id =?", new String[]{String.valueOf(id)});
+        return updated;
     }
 
     /**
-     *
-     * @param id
-     * @param where
+     * Updates every t by its id in one transaction with a compiled UPDATE.
+     * @param labTs TableLab<T> T objects
+     * @param ids key of every object, same order
+     * @return per row UPDATED, UNCHANGED if it already held those values, FAILED if missing
      */
-    public void delete(int id, String where) {
+    public Outcome[] updateBatch(List<T> labTs, int[] ids) {
         if (printLog) {
-            Log.v(TAG, DELETING + where + "=" + String.valueOf(id));
+            Log.v(TAG, BATCH_UPDATING + labTs.size());
         }
 
-        mDatabase.execSQL("DELETE FROM " + table() + " WHERE " + where + "=?", new String[]{String.valueOf(id)});
-    }
+        if (labTs.size() != ids.length) {
+            throw new IllegalArgumentException(labTs.size() + " objects for " + ids.length + " ids");
+        }
 
-    /**
-     *
-     * @param what
-     * @param where
-     */
-    public void delete(String what, String where) {
-        if (printLog) {
-            Log.v(TAG, DELETING + what);
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        Outcome[] outcomes = new Outcome[ids.length];
+        Upsert update = new Upsert(new String[]{ID}, false);
+
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                try {
+                    outcomes[i] = update.execute(labTs.get(i), ids[i]);
+                } catch (SQLException e) {
+                    Log.e(TAG, "Update of " + table() + " " + ids[i] + " failed: " + e.getMessage(), e);
+                    outcomes[i] = Outcome.FAILED;
+                }
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+            update.close();
+            for (int i = 0; i < ids.length; i++) {
+                if (outcomes[i] == Outcome.UPDATED) {
+                    uncache(ids[i]);
+                }
+            }
+            changed();
         }
 
-        mDatabase.execSQL("DELETE FROM " + table() + " WHERE " + where + "=?", new String[]{what});
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.BATCH, begin, 0, written(outcomes), null, null);
+        }
+        return outcomes;
     }
 
-    //////// FIND ///////////////////////////////////////////////////////////////////////////////
+    //////// UPSERT /////////////////////////////////////////////////////////////////////////////
 
-    /**
-     * select 1st ID = id
-     * @param id key
-     * @return t
-     */
-    public T find(int id) {
-        return select(id, null, null, null, true, null, null);
+    public enum Outcome {
+        INSERTED, UPDATED, UNCHANGED, FAILED
     }
 
     /**
-     * select 1st where() LIKE query
-     * @param query search arguments
-     * @return t
+     * Columns that identify a row for upsert(...). They have to be part of values(t) and
+     * carry a UNIQUE constraint or index, createIndexes(db) creates one if missing.
+     * @return conflict key, null if the lab does not upsert
      */
-    public T like(String query) {
-        return select(0, null, where(), query, false, null, null);
+    public String[] conflict() {
+        return null;
     }
 
     /**
-     * select 1st where() = query
-     * @param query search arguments
-     * @return t
+     * Inserts t, or updates the row with the same conflict() key.
+     * @param t TableLab<T> object
+     * @return INSERTED, UPDATED, UNCHANGED or FAILED
      */
-    public T exact(String query) {
-        return select(0, null, where(), query, true, null, null);
+    public Outcome upsert(T t) {
+        return upsertBatch(Collections.singletonList(t))[0];
     }
 
     /**
-     * select 1st ID = random id(entries())
-     * @return t
+     * Insert or update in one transaction: INSERT OR IGNORE on the conflict() key, and for
+     * the rows already there a compiled UPDATE that only touches rows whose values differ.
+     * The created column of existing rows is kept, updated is ignored when comparing.
+     * Rows that break another constraint are logged with it and come back FAILED.
+     * @param labTs TableLab<T> T objects
+     * @return per row INSERTED, UPDATED, UNCHANGED or FAILED
      */
-    public T random() {
-        int id = randomInt(entries());
-        return select(id, null, null, null, false, null, null);
-    }
+    public Outcome[] upsertBatch(List<T> labTs) {
+        if (printLog) {
+            Log.v(TAG, BATCH_UPSERTING + labTs.size());
+        }
 
-    //////// FIND MASTER //////////////////////////////////////////////////////////////////////
+        String[] keys = conflict();
+        if (keys == null || keys.length == 0) {
+            throw new IllegalStateException(table() + " declares no conflict() key");
+        }
+        checkUnique(keys);
 
-    /**
-     * 
-     * @param id id if 0, searches by query
-     * @param columns columns to retrieve
-     * @param where columns to search
-     * @param query search criteria
-     * @param isExact choose query = ? | query like = ?
-     * @param startDate start date for range when()
-     * @param endDate end date for range()
-     * @return
-     */
-    public T select(int id,
-                    String[] columns,
-                    String[] where,
-                    @Nullable String query,
-                    boolean isExact,
-                    @Nullable DateTime startDate,
-                    @Nullable DateTime endDate) {
-        T t = null;
-        Cursor cursor = null;
-        String queryArgs;
-        String[] whereArgs;
-        StringBuilder queryBuilder = new StringBuilder();
-        List<String> params = new ArrayList<>();
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
 
-        if (id > 0) {
-            queryBuilder.append(ID).append(" =?");
-            params.add(String.valueOf(id));
+        Outcome[] outcomes = new Outcome[labTs.size()];
+        Upsert upsert = new Upsert(keys, true);
+        forgetBounds();
 
-        } else if (!isEmpty(query)) {
-            String[] theWhere;
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < outcomes.length; i++) {
+                try {
+                    outcomes[i] = upsert.execute(labTs.get(i), 0);
+                } catch (SQLException e) {
+                    Log.e(TAG, "Upsert into " + table() + " failed: " + e.getMessage(), e);
+                    outcomes[i] = Outcome.FAILED;
+                }
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+            upsert.close();
+        }
 
-            if (null != where) {
-                theWhere = where;
-            } else {
-                theWhere = where();
+        boolean updated = false;
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i] == Outcome.INSERTED) {
+                inserted(labTs.get(i));
+            } else if (outcomes[i] == Outcome.UPDATED) {
+                updated = true;
             }
+        }
+        // Updated rows are found by conflict key, not id.
+        if (updated) {
+            uncacheAll();
+            changed();
+        }
 
-            if (null != theWhere) {
-                for (int i = 0; i < theWhere.length; i++) {
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.BATCH, begin, 0, written(outcomes), null, null);
+        }
+        return outcomes;
+    }
 
-                    if (isExact) {
-                        if (queryBuilder.length() > 0) {
-                            queryBuilder.append(" AND ");
-                        }
+    /**
+     * Tables whose conflict() key was found UNIQUE, by database path and table.
+     */
+    private static final Set<String> sUniqueKeys = Collections.synchronizedSet(new HashSet<String>());
 
-                        queryBuilder.append(theWhere[i]).append(" =?");
-                        params.add(query);
+    /**
+     * Without a UNIQUE index on the key INSERT OR IGNORE never ignores and upserts duplicate.
+     * @param keys conflict() key
+     */
+    private void checkUnique(String[] keys) {
+        String key = mDatabase.getPath() + "/" + table();
+        if (sUniqueKeys.contains(key)) {
+            return;
+        }
+        if (!uniqueOn(mDatabase, keys)) {
+            throw new IllegalStateException(table() + " has no UNIQUE index on " + Arrays.toString(keys)
+                    + ", call createIndexes(db) or declare the constraint");
+        }
+        sUniqueKeys.add(key);
+    }
 
-                    } else {
-                        if (queryBuilder.length() > 0) {
-                            queryBuilder.append(" OR ");
-                        }
+    private static int written(Outcome[] outcomes) {
+        int written = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome == Outcome.INSERTED || outcome == Outcome.UPDATED) {
+                written++;
+            }
+        }
+        return written;
+    }
 
-                        queryBuilder.append(theWhere[i]).append(" LIKE ?");
-                        params.add(likeParams(query.toLowerCase()));
-                    }
+    /**
+     * Compiled statements of updateBatch(...) and upsertBatch(...). Recompiled only if
+     * values(t) changes its columns.
+     */
+    final class Upsert {
+        private final String[] mKeys;
+        private final boolean mInsert;
+        private String[] mColumns, mSet, mCompare;
+        private SQLiteStatement mInsertStatement, mUpdate, mExists, mProbe;
+
+        /**
+         * @param keys columns that find the row
+         * @param insert insert missing rows, else only update
+         */
+        Upsert(String[] keys, boolean insert) {
+            mKeys = keys;
+            mInsert = insert;
+        }
+
+        /**
+         * @param t TableLab<T> object
+         * @param id key when updating by id, else ignored
+         */
+        Outcome execute(T t, int id) {
+            ContentValues values = values(t);
+            if (!mInsert) {
+                values.put(ID, id);
+            }
+
+            if (mColumns == null || !sameColumns(mColumns, values)) {
+                compile(values);
+            }
+
+            if (mInsert) {
+                bind(mInsertStatement, values, mColumns, 1);
+                if (mInsertStatement.executeInsert() != -1) {
+                    return Outcome.INSERTED;
                 }
             }
 
-            if (null != startDate && null != endDate) {
-                if (queryBuilder.length() > 0) {
-                    queryBuilder.append(" AND ");
+            if (mUpdate != null) {
+                int next = bind(mUpdate, values, mSet, 1);
+                next = bind(mUpdate, values, mKeys, next);
+                bind(mUpdate, values, mCompare, next);
+                if (mUpdate.executeUpdateDelete() > 0) {
+                    return Outcome.UPDATED;
                 }
+            }
 
-                queryBuilder.append(when()).append(" > ?");
-                params.add(String.valueOf(startDate.getMillis()));
+            bind(mExists, values, mKeys, 1);
+            if (mExists.simpleQueryForLong() > 0) {
+                return Outcome.UNCHANGED;
+            }
 
-                queryBuilder.append(" AND ");
-                queryBuilder.append(when()).append(" < ?");
-                params.add(String.valueOf(endDate.getMillis()));
+            if (mInsert) {
+                // INSERT OR IGNORE hides which constraint fired, a plain INSERT throws it
+                if (mProbe == null) {
+                    mProbe = mDatabase.compileStatement(insertSql(table(), mColumns));
+                }
+                bind(mProbe, values, mColumns, 1);
+                if (mProbe.executeInsert() != -1) {
+                    return Outcome.INSERTED;
+                }
             }
+            return Outcome.FAILED;
         }
 
-        queryArgs = queryBuilder.toString(); // Column = ? | LIKE ?
-        whereArgs = new String[params.size()]; // {"string", "date", "integer", "etc"}
-        params.toArray(whereArgs);
-
-        try {
-            SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-            builder.setTables(table());
-            String sql = builder.buildQuery(columns, queryArgs, null, null, null, "1");
+        void close() {
+            for (SQLiteStatement statement : new SQLiteStatement[]{mInsertStatement, mUpdate, mExists, mProbe}) {
+                if (statement != null) {
+                    statement.close();
+                }
+            }
+            mInsertStatement = mUpdate = mExists = mProbe = null;
+        }
 
-            cursor = mDatabase.rawQuery(sql, whereArgs);
+        private void compile(ContentValues values) {
+            close();
+            mColumns = values.keySet().toArray(new String[values.size()]);
 
-            if (printLog) {
-                Log.v(TAG, sql + logSelect(query));
+            List<String> columns = Arrays.asList(mColumns);
+            List<String> keys = Arrays.asList(mKeys);
+            if (!columns.containsAll(keys)) {
+                throw new IllegalArgumentException(table() + " values() lacks key " + keys);
             }
 
-            if (cursor != null && cursor.moveToFirst()) {
-                t = model(cursor);
+            ArrayList<String> set = new ArrayList<>();
+            ArrayList<String> compare = new ArrayList<>();
+            for (String column : mColumns) {
+                if (keys.contains(column) || (mInsert && CREATED.equals(column))) {
+                    continue;
+                }
+                set.add(column);
+                if (!CREATED.equals(column) && !UPDATED.equals(column)) {
+                    compare.add(column);
+                }
             }
+            mSet = set.toArray(new String[set.size()]);
+            mCompare = compare.toArray(new String[compare.size()]);
 
-        } finally {
-            mDbManager.close(cursor);
+            String keyWhere = join(mKeys, " = ?", " AND ");
+            if (mInsert) {
+                mInsertStatement = mDatabase.compileStatement(insertSql(INSERT_OR_IGNORE_INTO, table(), mColumns));
+            }
+            if (mSet.length > 0) {
+                String sql = UPDATE + table() + SET + join(mSet, " = ?", COMMA) + WHERE + keyWhere;
+                if (mCompare.length > 0) {
+                    sql += " AND NOT (" + join(mCompare, " IS ?", " AND ") + ")";
+                }
+                mUpdate = mDatabase.compileStatement(sql);
+            }
+            mExists = mDatabase.compileStatement(SELECT_COUNT_ALL_FROM + table() + WHERE + keyWhere);
         }
 
-        return t;
-
+        private int bind(SQLiteStatement statement, ContentValues values, String[] columns, int from) {
+            for (String column : columns) {
+                TableLab.bind(statement, from++, values.get(column));
+            }
+            return from;
+        }
     }
 
-    //////// LIST //////////////////////////////////////////////////////////////////////////////
+    //////// DELETE /////////////////////////////////////////////////////////////////////////////
 
     /**
      *
-     * @param orderByTime choose when() | orderBy()
-     * @param ascOrder choose ASC | DESC
-     * @return T object list
+     * @param id key
      */
-    public ArrayList<T> list(boolean orderByTime, boolean ascOrder) {
-        return select(null, null, null, null, null, false, null, null, null, orderByTime, ascOrder, null, null, false);
-    }
+    public void delete(int id) {
+        if (printLog) {
+            Log.v(TAG, DELETING + String.valueOf(id));
+        }
 
-    /**
-     *
-     * @param query search criteria
-     * @param orderByTime choose when() | orderBy()
-     * @param ascOrder choose ASC | DESC
-     * @return T object list
-     */
-    public ArrayList<T> like(String query, boolean orderByTime, boolean ascOrder) {
-        return select(null, null, null, orderBy(), query, false, null, null, null, orderByTime, ascOrder, null, null, false);
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        mDatabase.execSQL("DELETE FROM " + table() + " WHERE id =?", new String[]{String.valueOf(id)});
+        forgetBounds();
+        changed();
+        uncache(id);
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.DELETE, begin, 0, 0, null, null);
+        }
     }
 
     /**
      *
-     * @param query search criteria
-     * @param orderByTime choose when() | orderBy()
-     * @param ascOrder choose ASC | DESC
-     * @return T object list
+     * @param id
+     * @param where
      */
-    public ArrayList<T> exact(String query, boolean orderByTime, boolean ascOrder) {
-        return select(null, null, null, orderBy(), query, true, null, null, null, orderByTime, ascOrder, null, null, false);
+    public void delete(int id, String where) {
+        if (printLog) {
+            Log.v(TAG, DELETING + where + "=" + String.valueOf(id));
+        }
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        mDatabase.execSQL("DELETE FROM " + table() + " WHERE " + where + "=?", new String[]{String.valueOf(id)});
+        forgetBounds();
+        changed();
+        if (ID.equals(where)) {
+            uncache(id);
+        } else {
+            uncacheAll();
+        }
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.DELETE, begin, 0, 0, null, null);
+        }
+    }
+
+    /**
+     *
+     * @param what
+     * @param where
+     */
+    public void delete(String what, String where) {
+        if (printLog) {
+            Log.v(TAG, DELETING + what);
+        }
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        mDatabase.execSQL("DELETE FROM " + table() + " WHERE " + where + "=?", new String[]{what});
+        forgetBounds();
+        changed();
+        uncacheAll();
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.DELETE, begin, 0, 0, null, null);
+        }
+    }
+
+    /**
+     * Deletes every id in one transaction, MAX_IN ids per statement.
+     * @param ids keys
+     * @return rows removed
+     */
+    public int deleteBatch(int[] ids) {
+        if (printLog) {
+            Log.v(TAG, BATCH_DELETING + ids.length);
+        }
+
+        Long[] values = new Long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = (long) ids[i];
+        }
+
+        int deleted = deleteIn(ID, values);
+        for (int id : ids) {
+            uncache(id);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes every row whose where column holds one of values, in one transaction.
+     * @param where column to match
+     * @param values values to delete
+     * @return rows removed
+     */
+    public int deleteBatch(String where, String[] values) {
+        if (printLog) {
+            Log.v(TAG, BATCH_DELETING + where + " in " + values.length);
+        }
+
+        int deleted = deleteIn(where, values);
+        uncacheAll();
+        return deleted;
+    }
+
+    /**
+     * Deletes the rows whose when() falls between start and end, both excluded as in select(...).
+     * @param start start date for range when()
+     * @param end end date for range when()
+     * @return rows removed
+     */
+    public int deleteBetween(DateTime start, DateTime end) {
+        if (printLog) {
+            Log.v(TAG, DELETING + when() + " " + start + " - " + end);
+        }
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        int deleted;
+
+        SQLiteStatement statement = mDatabase.compileStatement(
+                "DELETE" + FROM + table() + WHERE + when() + " > ? AND " + when() + " < ?");
+        try {
+            statement.bindLong(1, start.getMillis());
+            statement.bindLong(2, end.getMillis());
+            deleted = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+            forgetBounds();
+            uncacheAll();
+            changed();
+        }
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.DELETE, begin, 0, deleted, null, null);
+        }
+        return deleted;
+    }
+
+    /**
+     * @param values bound typed, Longs for integer keys
+     */
+    private int deleteIn(String column, Object[] values) {
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        int deleted = 0;
+        SQLiteStatement full = null;
+
+        mDatabase.beginTransaction();
+        try {
+            for (int from = 0; from < values.length; from += MAX_IN) {
+                int to = Math.min(from + MAX_IN, values.length);
+                SQLiteStatement statement;
+
+                if (to - from == MAX_IN) {
+                    if (full == null) {
+                        full = mDatabase.compileStatement(deleteInSql(column, MAX_IN));
+                    }
+                    statement = full;
+                } else {
+                    statement = mDatabase.compileStatement(deleteInSql(column, to - from));
+                }
+
+                try {
+                    statement.clearBindings();
+                    for (int i = from; i < to; i++) {
+                        bind(statement, i - from + 1, values[i]);
+                    }
+                    deleted += statement.executeUpdateDelete();
+                } finally {
+                    if (statement != full) {
+                        statement.close();
+                    }
+                }
+            }
+            mDatabase.setTransactionSuccessful();
+
+        } finally {
+            mDatabase.endTransaction();
+            if (full != null) {
+                full.close();
+            }
+            forgetBounds();
+            changed();
+        }
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.DELETE, begin, 0, deleted, null, null);
+        }
+        return deleted;
+    }
+
+    private String deleteInSql(String column, int size) {
+        StringBuilder builder = new StringBuilder("DELETE").append(FROM).append(table())
+                .append(WHERE).append(column).append(" IN (");
+        for (int i = 0; i < size; i++) {
+            builder.append(i > 0 ? ",?" : "?");
+        }
+        return builder.append(")").toString();
+    }
+
+    //////// WRITE HOOKS ///////////////////////////////////////////////////////////////////////
+
+    /**
+     * Called after t was inserted and committed. Keeps in memory structures in step.
+     * @param t inserted object
+     */
+    protected void inserted(T t) {
+    }
+
+    /**
+     * Called after updates or deletes whose rows are not known one by one.
+     */
+    protected void changed() {
+    }
+
+    //////// FIND ///////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * select 1st ID = id
+     * @param id key
+     * @return t
+     */
+    @SuppressWarnings("unchecked")
+    public T find(int id) {
+        LruCache<Integer, Cached> cache = cache();
+        if (cache == null) {
+            return select(id, null, null, null, true, null, null);
+        }
+
+        Cached cached = cache.get(id);
+        if (cached != null) {
+            return (T) cached.value;
+        }
+
+        long writes = cacheWrites();
+        T t = select(id, null, null, null, true, null, null);
+        if (t != null) {
+            synchronized (sCaches) {
+                // A write that committed after our read already uncached id, keep the old row out.
+                if (writes == cacheWrites()) {
+                    cache.put(id, new Cached(t, cacheSize(t)));
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * select 1st where() LIKE query. With fullText() the best ranked MATCH instead
+     * @param query search arguments
+     * @return t
+     */
+    public T like(String query) {
+        String match = fullText() && fullTextReady() ? matchQuery(query) : null;
+        if (match != null) {
+            return match(match);
+        }
+        return select(0, null, where(), query, false, null, null);
+    }
+
+    /**
+     * select 1st where() = query
+     * @param query search arguments
+     * @return t
+     */
+    public T exact(String query) {
+        return select(0, null, where(), query, true, null, null);
+    }
+
+    /**
+     * select a random row. Draws ids between the cached min and max rowid and retries on
+     * gaps, instead of counting the table.
+     * @return t, null if the table is empty
+     */
+    public T random() {
+        long[] bounds = rowIdBounds();
+        if (bounds == null) {
+            return null;
+        }
+
+        String byRowId = SELECT_ALL_FROM + table() + WHERE + ROWID + " = ?";
+        for (int i = 0; i < RANDOM_RETRIES; i++) {
+            T t = first(byRowId, new Object[]{randomRowId(bounds)});
+            if (t != null) {
+                return t;
+            }
+        }
+
+        // Sparse table or bounds written behind our back: read them again and take the
+        // first row after a random rowid.
+        forgetBounds();
+        bounds = rowIdBounds();
+        if (bounds == null) {
+            return null;
+        }
+        T t = first(SELECT_ALL_FROM + table() + WHERE + ROWID + " >= ?" + ORDER_BY + ROWID + LIMIT + "1",
+                new Object[]{randomRowId(bounds)});
+        if (t == null) {
+            t = first(SELECT_ALL_FROM + table() + ORDER_BY + ROWID + LIMIT + "1", null);
+        }
+        return t;
+    }
+
+    //////// ENTITY CACHE //////////////////////////////////////////////////////////////////////
+
+    /**
+     * find(id) caches, one per database and table, shared by every lab instance of it.
+     */
+    private static final HashMap<String, LruCache<Integer, Cached>> sCaches = new HashMap<>();
+
+    // Invalidations per cache, a find(id) read that overlapped one is not cached. Guarded by sCaches.
+    private static final HashMap<String, Long> sCacheWrites = new HashMap<>();
+
+    private static final class Cached {
+        final Object value;
+        final int size;
+
+        Cached(Object value, int size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Turns on the find(id) cache for table(). Writes through any lab of the table
+     * invalidate it; writes made with raw SQL do not.
+     * @param maxSize budget in cacheSize(t) units, entries unless cacheSize(t) is overridden
+     */
+    public void enableCache(int maxSize) {
+        synchronized (sCaches) {
+            if (!sCaches.containsKey(cacheKey())) {
+                sCaches.put(cacheKey(), new LruCache<Integer, Cached>(maxSize) {
+                    @Override
+                    protected int sizeOf(Integer id, Cached cached) {
+                        return cached.size;
+                    }
+                });
+            }
+        }
+    }
+
+    public void disableCache() {
+        synchronized (sCaches) {
+            sCaches.remove(cacheKey());
+        }
+    }
+
+    /**
+     * Weight of t against the enableCache(maxSize) budget. Override with an estimate in
+     * bytes to budget memory instead of entries.
+     * @param t cached object
+     * @return 1
+     */
+    protected int cacheSize(T t) {
+        return 1;
+    }
+
+    public int cacheHits() {
+        LruCache<Integer, Cached> cache = cache();
+        return cache != null ? cache.hitCount() : 0;
+    }
+
+    public int cacheMisses() {
+        LruCache<Integer, Cached> cache = cache();
+        return cache != null ? cache.missCount() : 0;
+    }
+
+    public int cacheEvictions() {
+        LruCache<Integer, Cached> cache = cache();
+        return cache != null ? cache.evictionCount() : 0;
+    }
+
+    private LruCache<Integer, Cached> cache() {
+        synchronized (sCaches) {
+            return sCaches.isEmpty() ? null : sCaches.get(cacheKey());
+        }
+    }
+
+    protected void uncache(int id) {
+        synchronized (sCaches) {
+            LruCache<Integer, Cached> cache = cacheWritten();
+            if (cache != null) {
+                cache.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Empties the find(id) cache of table(). Call it after writing with raw SQL.
+     */
+    public void uncacheAll() {
+        synchronized (sCaches) {
+            LruCache<Integer, Cached> cache = cacheWritten();
+            if (cache != null) {
+                cache.evictAll();
+            }
+        }
+    }
+
+    // Call holding sCaches.
+    private LruCache<Integer, Cached> cacheWritten() {
+        if (sCaches.isEmpty()) {
+            return null;
+        }
+        String key = cacheKey();
+        sCacheWrites.put(key, cacheWrites() + 1);
+        return sCaches.get(key);
+    }
+
+    private long cacheWrites() {
+        synchronized (sCaches) {
+            Long writes = sCacheWrites.get(cacheKey());
+            return writes != null ? writes : 0;
+        }
+    }
+
+    private String cacheKey() {
+        return mDatabase.getPath() + "/" + table();
+    }
+
+    //////// FIND MASTER //////////////////////////////////////////////////////////////////////
+
+    /**
+     * 
+     * @param id id if 0, searches by query
+     * @param columns columns to retrieve
+     * @param where columns to search
+     * @param query search criteria
+     * @param isExact choose query = ? | query like = ?
+     * @param startDate start date for range when()
+     * @param endDate end date for range()
+     * @return
+     */
+    public T select(int id,
+                    String[] columns,
+                    String[] where,
+                    @Nullable String query,
+                    boolean isExact,
+                    @Nullable DateTime startDate,
+                    @Nullable DateTime endDate) {
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        long opened = 0;
+
+        T t = null;
+        Cursor cursor = null;
+        boolean byId = id > 0;
+        boolean hasQuery = !byId && !isEmpty(query);
+        boolean hasRange = hasQuery && null != startDate && null != endDate;
+        String[] theWhere = null;
+
+        if (hasQuery) {
+            theWhere = null != where ? where : where();
+        }
+
+        QueryShape shape = new QueryShape(table(), columns, theWhere, null, null, null, "1",
+                byId, isExact, false, false, hasRange);
+        String sql = sql(shape);
+        Object[] whereArgs = bindArgs(byId ? String.valueOf(id) : query, shape, startDate, endDate);
+
+        try {
+            opened = metrics != null ? System.nanoTime() : 0;
+            cursor = query(sql, whereArgs);
+
+            if (printLog) {
+                Log.v(TAG, sql + logSelect(query));
+            }
+
+            if (cursor != null && cursor.moveToFirst()) {
+                t = model(cursor, indices(cursor));
+            }
+
+        } finally {
+            mDbManager.close(cursor);
+        }
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.FIND, begin, System.nanoTime() - opened, t != null ? 1 : 0, sql, whereArgs);
+        }
+        return t;
+
+    }
+
+    //////// LIST //////////////////////////////////////////////////////////////////////////////
+
+    /**
+     *
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @return T object list
+     */
+    public ArrayList<T> list(boolean orderByTime, boolean ascOrder) {
+        return select(null, null, null, null, null, false, null, null, null, orderByTime, ascOrder, null, null, false);
+    }
+
+    /**
+     *
+     * @param query search criteria
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @return T object list
+     */
+    public ArrayList<T> like(String query, boolean orderByTime, boolean ascOrder) {
+        String match = fullText() && fullTextReady() ? matchQuery(query) : null;
+        if (match != null) {
+            return match(match, orderByTime, ascOrder);
+        }
+        return select(null, null, null, orderBy(), query, false, null, null, null, orderByTime, ascOrder, null, null, false);
+    }
+
+    /**
+     *
+     * @param query search criteria
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @return T object list
+     */
+    public ArrayList<T> exact(String query, boolean orderByTime, boolean ascOrder) {
+        return select(null, null, null, orderBy(), query, true, null, null, null, orderByTime, ascOrder, null, null, false);
+    }
+
+    /**
+     *
+     * @param parentId parentId
+     * @param where column with parent keys
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @return T object list
+     */
+    public ArrayList<T> children(int parentId, String where, boolean orderByTime, boolean ascOrder) {
+        return select(null, null, new String[]{where}, null, String.valueOf(parentId), true, null, null, null, orderByTime, ascOrder, null, null, false);
+    }
+
+    /**
+     * @deprecated asyncTask is ignored and the list is built on the calling thread.
+     * Use children(parentId, where, orderByTime, ascOrder) or children(..., callback) instead.
+     */
+    @Deprecated
+    public ArrayList<T> children(int parentId, String where, boolean orderByTime, boolean ascOrder, boolean asyncTask) {
+        return children(parentId, where, orderByTime, ascOrder);
+    }
+
+    /**
+     * children(...) on the query pool, delivered on the main thread.
+     * @param parentId parentId
+     * @param where column with parent keys
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @param callback result receiver
+     * @return future to cancel the query
+     */
+    public Future<ArrayList<T>> children(final int parentId, final String where, final boolean orderByTime,
+                                         final boolean ascOrder, QueryCallback<ArrayList<T>> callback) {
+        return submit(new Callable<ArrayList<T>>() {
+            @Override
+            public ArrayList<T> call() {
+                return children(parentId, where, orderByTime, ascOrder);
+            }
+        }, callback, null);
+    }
+
+    /**
+     * @deprecated blocks the calling thread until the list is built.
+     * Use async(..., callback) instead.
+     */
+    @Deprecated
+    public ArrayList<T> async(String query, boolean isExact, boolean orderByTime, boolean ascOrder) {
+        return select(null, null, null, orderBy(), query, isExact, null, null, null, orderByTime, ascOrder, null, null, false);
+    }
+
+    /**
+     * Searches on the query pool and delivers on the main thread.
+     * @param query search criteria
+     * @param isExact choose query = ? | query like = ?
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @param callback result receiver
+     * @return future to cancel the query
+     */
+    public Future<ArrayList<T>> async(String query, boolean isExact, boolean orderByTime, boolean ascOrder,
+                                      QueryCallback<ArrayList<T>> callback) {
+        return async(query, isExact, orderByTime, ascOrder, callback, null);
+    }
+
+    /**
+     * Searches on the query pool, rows are mapped there too.
+     * @param query search criteria
+     * @param isExact choose query = ? | query like = ?
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @param callback result receiver
+     * @param deliverOn executor to call back on. If null main thread
+     * @return future to cancel the query
+     */
+    public Future<ArrayList<T>> async(final String query, final boolean isExact, final boolean orderByTime,
+                                      final boolean ascOrder, QueryCallback<ArrayList<T>> callback,
+                                      @Nullable Executor deliverOn) {
+        return submit(new Callable<ArrayList<T>>() {
+            @Override
+            public ArrayList<T> call() {
+                return select(null, null, null, orderBy(), query, isExact, null, null, null, orderByTime, ascOrder, null, null, false);
+            }
+        }, callback, deliverOn);
+    }
+
+    /**
+     * limit distinct random rows in one query. Draws rowids between the cached bounds, so
+     * only the drawn rows are read, never the whole table.
+     * @param limit rows wanted
+     * @param orderByTime choose when() | orderBy() to sort the sample
+     * @param ascOrder choose ASC | DESC
+     * @return up to limit random T objects
+     */
+    public ArrayList<T> random(int limit, boolean orderByTime, boolean ascOrder) {
+        final ArrayList<T> objects = new ArrayList<>();
+        long[] bounds = limit < 1 ? null : rowIdBounds();
+        if (bounds == null) {
+            return objects;
+        }
+
+        String key = orderByTime ? when() : orderBy() != null ? "lower(" + orderBy() + ")" : null;
+        String order = key != null ? ORDER_BY + key + (ascOrder ? ASC : DESC) : "";
+        long span = bounds[1] - bounds[0] + 1;
+        int draws = limit * 2 + 8;
+
+        for (int i = 0; i < RANDOM_RETRIES; i++) {
+            String candidates;
+            if (draws >= span) {
+                candidates = SELECT_ALL_FROM + table();
+            } else {
+                candidates = SELECT_ALL_FROM + table() + WHERE + ROWID + " IN (" + randomRowIds(bounds, draws) + ")";
+            }
+
+            // Only the candidates are shuffled, ORDER BY random() never sees the whole table.
+            String sql = SELECT_ALL_FROM + "(" + candidates + ORDER_BY + "random()" + LIMIT + limit + ")" + order;
+            if (printLog) {
+                Log.v(TAG, sql);
+            }
+
+            Metrics metrics = sMetrics;
+            long begin = metrics != null ? System.nanoTime() : 0;
+
+            objects.clear();
+            stream(mDatabase.rawQuery(sql, null), new RowCallback<T>() {
+                @Override
+                public boolean onRow(T t) {
+                    return objects.add(t);
+                }
+            });
+
+            if (metrics != null) {
+                measure(metrics, Metrics.Op.SELECT, begin, System.nanoTime() - begin, objects.size(), sql, null);
+            }
+
+            if (objects.size() == limit || draws >= span) {
+                break;
+            }
+            draws *= 2;
+        }
+
+        if (objects.isEmpty()) {
+            forgetBounds(); // every draw missed, the table shrank behind the cached bounds
+        }
+        return objects;
+    }
+
+    //////// RANDOM ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Ids drawn before random() falls back to a range seek.
+     */
+    public static final int RANDOM_RETRIES = 8;
+
+    private static final Random RANDOM = new Random();
+
+    /**
+     * min and max rowid per database and table, shared by every lab instance of it.
+     */
+    private static final HashMap<String, long[]> sBounds = new HashMap<>();
+
+    private String boundsKey() {
+        return mDatabase.getPath() + "/" + table();
+    }
+
+    /**
+     * Reads min and max rowid once, again only after a lab of the table wrote to it.
+     * @return {min, max}, null if the table is empty
+     */
+    private long[] rowIdBounds() {
+        String key = boundsKey();
+        synchronized (sBounds) {
+            long[] bounds = sBounds.get(key);
+            if (bounds != null) {
+                return bounds;
+            }
+        }
+
+        long[] bounds = null;
+        Cursor cursor = null;
+        try {
+            cursor = mDatabase.rawQuery(SELECT + "min(" + ROWID + "), max(" + ROWID + ")" + FROM + table(), null);
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                bounds = new long[]{cursor.getLong(0), cursor.getLong(1)};
+            }
+        } finally {
+            mDbManager.close(cursor);
+        }
+
+        if (bounds != null) {
+            synchronized (sBounds) {
+                sBounds.put(key, bounds);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Rows were written to the table, rowid bounds have to be read again. Call it after
+     * writing with raw SQL.
+     */
+    public void forgetBounds() {
+        synchronized (sBounds) {
+            sBounds.remove(boundsKey());
+        }
+    }
+
+    private static long randomRowId(long[] bounds) {
+        return bounds[0] + (long) (RANDOM.nextDouble() * (bounds[1] - bounds[0] + 1));
+    }
+
+    private static String randomRowIds(long[] bounds, int count) {
+        HashSet<Long> drawn = new HashSet<>(count * 2);
+        StringBuilder builder = new StringBuilder(count * 8);
+        while (drawn.size() < count) {
+            long rowId = randomRowId(bounds);
+            if (drawn.add(rowId)) {
+                builder.append(drawn.size() > 1 ? COMMA : "").append(rowId);
+            }
+        }
+        return builder.toString();
+    }
+
+    private T first(String sql, Object[] args) {
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        T t = null;
+        Cursor cursor = null;
+        try {
+            cursor = query(sql, args);
+            if (cursor != null && cursor.moveToFirst()) {
+                t = model(cursor, indices(cursor));
+            }
+        } finally {
+            mDbManager.close(cursor);
+        }
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.FIND, begin, System.nanoTime() - begin, t != null ? 1 : 0, sql, args);
+        }
+        return t;
+    }
+
+    //////// FULL TEXT /////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Shadow tables known to exist, by database path and name.
+     */
+    private static final Set<String> sFullTextTables = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * Opt in to full text search: like(...) becomes a MATCH on an FTS4 shadow table of
+     * where(). Terms match as word prefixes, not as substrings like LIKE '%q%' does.
+     * @return true to index where()
+     */
+    public boolean fullText() {
+        return false;
+    }
+
+    public String fullTextTable() {
+        return table() + FTS;
+    }
+
+    private String fullTextKey(SQLiteDatabase db) {
+        return db.getPath() + "/" + fullTextTable();
+    }
+
+    /**
+     * Creates the shadow table and the triggers that keep it in sync on every insert,
+     * update and delete, then backfills it. Does nothing if it already exists. createIndexes(db)
+     * calls it with fullText(), so like() never runs DDL. The unicode61 tokenizer folds case
+     * and diacritics of non ASCII letters too.
+     */
+    public void enableFullText() {
+        if (!fullTextReady()) {
+            fullText(mDatabase, false);
+        }
+    }
+
+    /**
+     * @param db database being created or upgraded
+     * @param rebuild drop and refill the shadow table, its docids may belong to a dropped table
+     */
+    private void fullText(SQLiteDatabase db, boolean rebuild) {
+        String fts = fullTextTable();
+        String[] where = where();
+        if (where == null || where.length == 0) {
+            throw new IllegalStateException(table() + " has no where() columns to index");
+        }
+
+        StringBuilder columns = new StringBuilder();
+        StringBuilder news = new StringBuilder();
+        for (int i = 0; i < where.length; i++) {
+            columns.append(i > 0 ? COMMA : "").append(where[i]);
+            news.append(i > 0 ? COMMA : "").append("new.").append(where[i]);
+        }
+
+        String insert = INSERT_INTO + fts + " (" + DOCID + COMMA + columns + ")"
+                + VALUES + "(new." + ROWID + COMMA + news + "); ";
+        String delete = "DELETE" + FROM + fts + WHERE + DOCID + " = old." + ROWID + "; ";
+
+        db.beginTransaction();
+        try {
+            if (rebuild) {
+                dropFullText(db);
+            }
+            if (!exists(db, fts)) {
+                if (printLog) {
+                    Log.v(TAG, "Creating " + fts);
+                }
+                db.execSQL(CREATE_VIRTUAL_TABLE_IF_NOT_EXISTS + fts + " USING fts4(" + columns + ", tokenize=unicode61)");
+                db.execSQL(INSERT_INTO + fts + " (" + DOCID + COMMA + columns + ") "
+                        + SELECT + ROWID + COMMA + columns + FROM + table());
+            }
+
+            db.execSQL(CREATE_TRIGGER_IF_NOT_EXISTS + fts + "_ai AFTER INSERT ON " + table()
+                    + " BEGIN " + insert + "END");
+            db.execSQL(CREATE_TRIGGER_IF_NOT_EXISTS + fts + "_au AFTER UPDATE ON " + table()
+                    + " BEGIN " + delete + insert + "END");
+            db.execSQL(CREATE_TRIGGER_IF_NOT_EXISTS + fts + "_ad AFTER DELETE ON " + table()
+                    + " BEGIN " + delete + "END");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        sFullTextTables.add(fullTextKey(db));
+        forgetSchema(db);
+    }
+
+    /**
+     * Drops the shadow table and its triggers, like(...) goes back to LIKE unless fullText().
+     */
+    public void disableFullText() {
+        disableFullText(mDatabase);
+    }
+
+    /**
+     * Same as disableFullText(), call it next to dropping the table in onUpgrade(...).
+     * @param db database being upgraded
+     */
+    public void disableFullText(SQLiteDatabase db) {
+        dropFullText(db);
+        forgetSchema(db);
+    }
+
+    private void dropFullText(SQLiteDatabase db) {
+        String fts = fullTextTable();
+        db.execSQL(DROP_TRIGGER_IF_EXISTS + fts + "_ai");
+        db.execSQL(DROP_TRIGGER_IF_EXISTS + fts + "_au");
+        db.execSQL(DROP_TRIGGER_IF_EXISTS + fts + "_ad");
+        db.execSQL(DROP_TABLE_IF_EXISTS + fts);
+        sFullTextTables.remove(fullTextKey(db));
+    }
+
+    /**
+     * Read only check, the shadow table and its insert trigger exist. Remembered once true.
+     * @return true if MATCH can be used
+     */
+    private boolean fullTextReady() {
+        String key = fullTextKey(mDatabase);
+        if (sFullTextTables.contains(key)) {
+            return true;
+        }
+        if (exists(mDatabase, fullTextTable()) && exists(mDatabase, fullTextTable() + "_ai")) {
+            sFullTextTables.add(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Best ranked row, see ranked(...).
+     * @param match MATCH expression, see matchQuery(...)
+     * @return t
+     */
+    public T match(String match) {
+        String sql = ranked(null) + LIMIT + "1";
+
+        if (printLog) {
+            Log.v(TAG, sql + logSelect(match));
+        }
+        return first(sql, new Object[]{match, exactTerms(match)});
+    }
+
+    /**
+     * All rows matching, ranked as match(...), ties in list order.
+     * @param match MATCH expression, see matchQuery(...)
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @return T object list
+     */
+    public ArrayList<T> match(String match, boolean orderByTime, boolean ascOrder) {
+        String key = orderByTime ? when() : orderBy() != null ? "lower(" + orderBy() + ")" : null;
+        String sql = ranked(key != null ? key + (ascOrder ? ASC : DESC) : null);
+
+        if (printLog) {
+            Log.v(TAG, sql + logSelect(match));
+        }
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        Object[] args = new Object[]{match, exactTerms(match)};
+
+        final ArrayList<T> objects = new ArrayList<>();
+        stream(query(sql, args), new RowCallback<T>() {
+            @Override
+            public boolean onRow(T t) {
+                return objects.add(t);
+            }
+        });
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.SELECT, begin, System.nanoTime() - begin, objects.size(), sql, args);
+        }
+        return objects;
+    }
+
+    /**
+     * Rows matching the 1st argument, whole word matches of the 2nd first, then by term hits.
+     * @param tieBreak ORDER BY term after the rank, may be null
+     * @return SELECT of table() columns
+     */
+    private String ranked(@Nullable String tieBreak) {
+        if (!fullTextReady()) {
+            throw new IllegalStateException(fullTextTable() + " missing, call createIndexes(db) or enableFullText()");
+        }
+
+        String fts = fullTextTable();
+        String offsets = "offsets(" + fts + ")";
+        String hits = "(length(" + offsets + ") - length(replace(" + offsets + ", ' ', '')) + 1) / 4";
+
+        return SELECT + "t.*" + FROM + table() + " t" + JOIN + "(" + SELECT + DOCID + COMMA + hits + AS + "hits"
+                + FROM + fts + WHERE + fts + MATCH + ") m" + ON + "t." + ROWID + " = m." + DOCID
+                + ORDER_BY + "m." + DOCID + " IN (" + SELECT + DOCID + FROM + fts + WHERE + fts + MATCH + ")" + DESC
+                + COMMA + "m.hits" + DESC + (tieBreak != null ? COMMA + tieBreak : "");
+    }
+
+    /**
+     * @param match MATCH expression
+     * @return match with its prefix terms made whole word terms
+     */
+    private static String exactTerms(String match) {
+        return match.replace("*", "");
+    }
+
+    /**
+     * Turns user input into a MATCH expression: every word as a quoted prefix term.
+     * @param query user input
+     * @return MATCH expression, null if query has no words
+     */
+    public static String matchQuery(String query) {
+        if (isEmpty(query)) {
+            return null;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (String term : query.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() > 0) {
+                builder.append(builder.length() > 0 ? " " : "").append('"').append(term).append("*\"");
+            }
+        }
+        return builder.length() > 0 ? builder.toString() : null;
+    }
+
+    private boolean exists(SQLiteDatabase db, String name) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("select 1 from sqlite_master where name = ?", new String[]{name});
+            return cursor != null && cursor.moveToFirst();
+        } finally {
+            mDbManager.close(cursor);
+        }
+    }
+
+    //////// LIST MASTER //////////////////////////////////////////////////////////////////////
+
+    /**
+     * Master search. Uses given or default values for each field.
+     * @param table table to search. By default extended one
+     * @param columns columns to retrieve. If null all
+     * @param where columns to search. If null where()
+     * @param orderBy column to order. If null orderBy()
+     * @param query search criteria. If null searches by id
+     * @param isExact choose query = ? | query like = ?
+     * @param groupBy choose different groups from groupBy()
+     * @param having choose different group having from having()
+     * @param limit list limit
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @param start start date for range when()
+     * @param end end date for range when()
+     * @param asyncTask ignored, the list is built on the calling thread. See async(..., callback)
+     * @return T object list
+     */
+    public ArrayList<T> select(String table,
+                               @Nullable String[] columns,
+                               @Nullable String[] where,
+                               String orderBy,
+                               @Nullable String query,
+                               boolean isExact,
+                               String groupBy,
+                               String having,
+                               String limit,
+                               boolean orderByTime,
+                               boolean ascOrder,
+                               @Nullable DateTime start,
+                               @Nullable DateTime end,
+                               boolean asyncTask) {
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        long opened = 0;
+
+        ArrayList<T> objects = new ArrayList<>();
+        Cursor cursor = null;
+        QueryShape shape = shape(table, columns, where, orderBy, query, isExact, groupBy, having,
+                limit, orderByTime, ascOrder, null != start && null != end);
+
+        String sql = sql(shape);
+        Object[] whereArgs = bindArgs(query, shape, start, end);
+
+        try {
+
+            if (printLog) {
+                Log.v(TAG, sql + logSelect(query));
+            }
+
+
+            opened = metrics != null ? System.nanoTime() : 0;
+            cursor = query(sql, whereArgs);
+
+            if (cursor != null) {
+                int[] index = indices(cursor);
+                Thread thread = Thread.currentThread();
+                while (cursor.moveToNext() && !thread.isInterrupted()) {
+                    T t = model(cursor, index);
+                    objects.add(t);
+                }
+            }
+
+        } finally {
+            mDbManager.close(cursor);
+        }
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.SELECT, begin, System.nanoTime() - opened, objects.size(), sql, whereArgs);
+        }
+        return objects;
+    }
+
+    //////// STREAM ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Receives rows one at a time while the cursor is still open.
+     */
+    public interface RowCallback<T> {
+        /**
+         * @param t current row
+         * @return false to stop reading and close the cursor
+         */
+        boolean onRow(T t);
+    }
+
+    /**
+     * Same as list(...) but hands every row to callback instead of building a list.
+     * @param query search criteria. If null all
+     * @param isExact choose query = ? | query like = ?
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @param callback row receiver
+     * @return rows handed to callback
+     */
+    public int stream(@Nullable String query, boolean isExact, boolean orderByTime, boolean ascOrder,
+                      RowCallback<T> callback) {
+        return stream(query, isExact, orderByTime, ascOrder, null, null, callback);
+    }
+
+    /**
+     * Same as list(...) but hands every row to callback instead of building a list.
+     * @param query search criteria. If null all
+     * @param isExact choose query = ? | query like = ?
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @param start start date for range when()
+     * @param end end date for range when()
+     * @param callback row receiver
+     * @return rows handed to callback
+     */
+    public int stream(@Nullable String query, boolean isExact, boolean orderByTime, boolean ascOrder,
+                      @Nullable DateTime start, @Nullable DateTime end, RowCallback<T> callback) {
+        boolean hasQuery = !isEmpty(query);
+        QueryShape shape = new QueryShape(table(), null, hasQuery ? where() : null,
+                orderByTime ? when() : orderBy(), groupBy(), having(), null,
+                false, isExact, orderByTime, ascOrder, null != start && null != end);
+
+        String sql = sql(shape);
+        if (printLog) {
+            Log.v(TAG, sql + logSelect(query));
+        }
+
+        Metrics metrics = sMetrics;
+        if (metrics == null) {
+            return stream(query(sql, bindArgs(query, shape, start, end)), callback);
+        }
+
+        long begin = System.nanoTime();
+        Object[] args = bindArgs(query, shape, start, end);
+        int rows = stream(query(sql, args), callback);
+        long open = System.nanoTime() - begin;
+        measure(metrics, Metrics.Op.SELECT, begin, open, rows, sql, args);
+        return rows;
+    }
+
+    /**
+     * Maps and hands over every row of cursor, then closes it.
+     * @param cursor open cursor, may be null
+     * @param callback row receiver
+     * @return rows handed to callback
+     */
+    protected int stream(Cursor cursor, RowCallback<T> callback) {
+        int rows = 0;
+        try {
+            if (cursor != null) {
+                int[] index = indices(cursor);
+                while (cursor.moveToNext()) {
+                    rows++;
+                    if (!callback.onRow(model(cursor, index))) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            mDbManager.close(cursor);
+        }
+        return rows;
+    }
+
+    //////// PROJECTION ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * ids of the rows list(...) would return, without mapping them.
+     * @param query search criteria. If null all
+     * @param isExact choose query = ? | query like = ?
+     * @return ids
+     */
+    public long[] ids(@Nullable String query, boolean isExact) {
+        return ids(query, isExact, false, true, null, null, null);
     }
 
     /**
-     *
-     * @param parentId parentId
-     * @param where column with parent keys
+     * ids of the rows select(...) would return, without mapping them.
+     * @param query search criteria. If null all
+     * @param isExact choose query = ? | query like = ?
      * @param orderByTime choose when() | orderBy()
      * @param ascOrder choose ASC | DESC
-     * @param asyncTask T object list
-     * @return
+     * @param start start date for range when()
+     * @param end end date for range when()
+     * @param limit list limit
+     * @return ids
      */
-    public ArrayList<T> children(int parentId, String where, boolean orderByTime, boolean ascOrder, boolean asyncTask) {
-        return select(null, null, new String[]{where}, null, String.valueOf(parentId), true, null, null, null, orderByTime, ascOrder, null, null, asyncTask);
+    public long[] ids(@Nullable String query, boolean isExact, boolean orderByTime, boolean ascOrder,
+                      @Nullable DateTime start, @Nullable DateTime end, @Nullable String limit) {
+        return longColumn(ID, query, isExact, orderByTime, ascOrder, start, end, limit);
     }
 
     /**
-     *
-     * @param query
-     * @param isExact
-     * @param orderByTime
-     * @param ascOrder
-     * @return
+     * One column of the rows select(...) would return.
+     * @param name column to read
+     * @param query search criteria. If null all
+     * @param isExact choose query = ? | query like = ?
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @param start start date for range when()
+     * @param end end date for range when()
+     * @param limit list limit
+     * @return values, null for NULL
      */
-    public ArrayList<T> async(String query, boolean isExact, boolean orderByTime, boolean ascOrder) {
-        return select(null, null, null, orderBy(), query, isExact, null, null, null, orderByTime, ascOrder, null, null, true);
+    public String[] column(String name, @Nullable String query, boolean isExact, boolean orderByTime,
+                           boolean ascOrder, @Nullable DateTime start, @Nullable DateTime end,
+                           @Nullable String limit) {
+        return rows(new String[]{name}, new int[]{Cursor.FIELD_TYPE_STRING},
+                query, isExact, orderByTime, ascOrder, start, end, limit).strings(0);
     }
 
     /**
-     *
-     * @param limit
-     * @return
+     * Same as column(...) for INTEGER columns, NULL reads as 0.
      */
-    public ArrayList<T> random(int limit, boolean orderByTime, boolean ascOrder) {
-        return select(null, null, null, null, null, false, null, null, String.valueOf(limit), orderByTime, ascOrder, null, null, false);
+    public long[] longColumn(String name, @Nullable String query, boolean isExact, boolean orderByTime,
+                             boolean ascOrder, @Nullable DateTime start, @Nullable DateTime end,
+                             @Nullable String limit) {
+        return rows(new String[]{name}, new int[]{Cursor.FIELD_TYPE_INTEGER},
+                query, isExact, orderByTime, ascOrder, start, end, limit).longs(0);
     }
 
-    //////// LIST MASTER //////////////////////////////////////////////////////////////////////
+    /**
+     * Same as column(...) for REAL columns, NULL reads as 0.
+     */
+    public double[] doubleColumn(String name, @Nullable String query, boolean isExact, boolean orderByTime,
+                                 boolean ascOrder, @Nullable DateTime start, @Nullable DateTime end,
+                                 @Nullable String limit) {
+        return rows(new String[]{name}, new int[]{Cursor.FIELD_TYPE_FLOAT},
+                query, isExact, orderByTime, ascOrder, start, end, limit).doubles(0);
+    }
 
     /**
-     * Master search. Uses given or default values for each field.
-     * @param table table to search. By default extended one
-     * @param columns columns to retrieve. If null all
-     * @param where columns to search. If null where()
-     * @param orderBy column to order. If null orderBy()
-     * @param query search criteria. If null searches by id
+     * A few columns of the rows select(...) would return, into primitive arrays.
+     * @param columns columns to read
+     * @param types Cursor.FIELD_TYPE_INTEGER | FIELD_TYPE_FLOAT | FIELD_TYPE_STRING of each column
+     * @param query search criteria. If null all
      * @param isExact choose query = ? | query like = ?
-     * @param groupBy choose different groups from groupBy()
-     * @param having choose different group having from having()
-     * @param limit list limit
      * @param orderByTime choose when() | orderBy()
      * @param ascOrder choose ASC | DESC
      * @param start start date for range when()
      * @param end end date for range when()
-     * @param asyncTask choose true for heavy load
-     * @return T object list
+     * @param limit list limit
+     * @return rows
      */
-    public ArrayList<T> select(String table,
-                               @Nullable String[] columns,
-                               @Nullable String[] where,
-                               String orderBy,
-                               @Nullable String query,
-                               boolean isExact,
-                               String groupBy,
-                               String having,
-                               String limit,
-                               boolean orderByTime,
-                               boolean ascOrder,
-                               @Nullable DateTime start,
-                               @Nullable DateTime end,
-                               boolean asyncTask) {
+    public RowBatch rows(String[] columns, int[] types, @Nullable String query, boolean isExact,
+                         boolean orderByTime, boolean ascOrder, @Nullable DateTime start,
+                         @Nullable DateTime end, @Nullable String limit) {
+        QueryShape shape = shape(null, columns, null, null, query, isExact, null, null,
+                limit, orderByTime, ascOrder, null != start && null != end);
 
-        ArrayList<T> objects = new ArrayList<>();
+        String sql = sql(shape);
+        if (printLog) {
+            Log.v(TAG, sql + logSelect(query));
+        }
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        Object[] args = bindArgs(query, shape, start, end);
+
+        RowBatch batch = new RowBatch(columns, types, 0);
         Cursor cursor = null;
-        String queryArgs;
-        String[] whereArgs;
-        String sortOrder;
-        StringBuilder queryBuilder = new StringBuilder();
-        StringBuilder orderBuilder = new StringBuilder();
-        List<String> params = new ArrayList<>();
+        try {
+            cursor = query(sql, args);
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    batch.add(cursor);
+                }
+            }
+        } finally {
+            mDbManager.close(cursor);
+        }
 
-        String theTable;
-        if (null != table) {
-            theTable = table;
-        } else {
-            theTable = table();
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.SELECT, begin, System.nanoTime() - begin, batch.size(), sql, args);
+        }
+        return batch;
+    }
+
+    //////// PAGE //////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Keyset pagination over when() | lower(orderBy()) and id. Every page costs the same as
+     * the first one because it seeks past the previous last row. The sort column should be
+     * NOT NULL.
+     * @param after previous page. If null first page
+     * @param pageSize rows per page
+     * @param orderByTime choose when() | orderBy()
+     * @param ascOrder choose ASC | DESC
+     * @return next page
+     */
+    public Page<T> page(@Nullable Page<T> after, int pageSize, boolean orderByTime, boolean ascOrder) {
+        String key = orderByTime ? when() : "lower(" + orderBy() + ")";
+        String direction = ascOrder ? ASC : DESC;
+        Object[] args = null;
+
+        StringBuilder builder = new StringBuilder(SELECT).append("*, ").append(key).append(AS)
+                .append(PAGE_KEY).append(FROM).append(table());
+
+        if (after != null && !after.isEmpty()) {
+            String seek = ascOrder ? " > ?" : " < ?";
+            builder.append(WHERE).append(key).append(seek)
+                    .append(" OR (").append(key).append(" = ? AND ").append(ID).append(seek).append(")");
+            args = new Object[]{after.getSeekKey(), after.getSeekKey(), after.getLastId()};
+        }
+
+        builder.append(ORDER_BY).append(key).append(direction).append(COMMA).append(ID).append(direction)
+                .append(LIMIT).append(pageSize + 1);
+
+        String sql = builder.toString();
+        if (printLog) {
+            Log.v(TAG, sql);
+        }
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
+        ArrayList<T> items = new ArrayList<>(pageSize);
+        String lastKey = null;
+        long lastTime = 0;
+        int lastId = 0;
+        boolean hasMore = false;
+        Cursor cursor = null;
+
+        try {
+            cursor = query(sql, args);
+            if (cursor != null) {
+                int[] index = indices(cursor);
+                int keyIndex = cursor.getColumnIndex(PAGE_KEY);
+                int idIndex = cursor.getColumnIndex(ID);
+
+                while (cursor.moveToNext()) {
+                    if (items.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    items.add(model(cursor, index));
+                    if (orderByTime) {
+                        lastTime = cursor.getLong(keyIndex);
+                    } else {
+                        lastKey = cursor.getString(keyIndex);
+                    }
+                    lastId = cursor.getInt(idIndex);
+                }
+            }
+        } finally {
+            mDbManager.close(cursor);
+        }
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.SELECT, begin, System.nanoTime() - begin, items.size(), sql, args);
+        }
+        return orderByTime ? new Page<>(items, lastTime, lastId, hasMore) : new Page<>(items, lastKey, lastId, hasMore);
+    }
+
+    //////// BATCH //////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Told about every chunk of saveBatch(...) that had to be rolled back.
+     */
+    public interface ChunkListener {
+        void onChunkFailed(int from, int to, SQLException e);
+    }
+
+    /**
+     * Compiled INSERT reused across rows. With mapper() rows are bound straight from the bean,
+     * else recompiled only if values(t) changes its columns.
+     */
+    final class Insert {
+        private final RowMapper<T> mMapper = mapper();
+        private SQLiteStatement mStatement;
+        private String[] mColumns;
+
+        long execute(T t) {
+            if (mMapper != null) {
+                if (mStatement == null) {
+                    mStatement = mDatabase.compileStatement(insertSql(table(), mMapper.insertColumns()));
+                }
+                mMapper.bind(mStatement, t);
+                return checked(mStatement.executeInsert());
+            }
+
+            ContentValues values = values(t);
+
+            if (mStatement == null || !sameColumns(mColumns, values)) {
+                close();
+                mColumns = values.keySet().toArray(new String[values.size()]);
+                mStatement = mDatabase.compileStatement(insertSql(table(), mColumns));
+            }
+
+            mStatement.clearBindings();
+            for (int i = 0; i < mColumns.length; i++) {
+                bind(mStatement, i + 1, values.get(mColumns[i]));
+            }
+
+            return checked(mStatement.executeInsert());
+        }
+
+        private long checked(long id) {
+            if (id == -1) {
+                throw new SQLException("Insert into " + table() + " failed");
+            }
+            return id;
+        }
+
+        void close() {
+            if (mStatement != null) {
+                mStatement.close();
+                mStatement = null;
+            }
+        }
+    }
+
+    private static boolean sameColumns(String[] columns, ContentValues values) {
+        if (values.size() != columns.length) {
+            return false;
+        }
+        for (String column : columns) {
+            if (!values.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //////// METRICS ///////////////////////////////////////////////////////////////////////////
+
+    private static volatile Metrics sMetrics;
+
+    /**
+     * Installs metrics for every lab. While none is installed operations read no clock.
+     * @param metrics metrics, null to turn them off
+     */
+    public static void metrics(@Nullable Metrics metrics) {
+        sMetrics = metrics;
+    }
+
+    @Nullable
+    public static Metrics metrics() {
+        return sMetrics;
+    }
+
+    /**
+     * EXPLAIN QUERY PLAN output by database path and SQL, so a slow shape is explained once.
+     */
+    private static final LruCache<String, List<String>> sPlans = new LruCache<>(SQL_CACHE_SIZE * 4);
+
+    /**
+     * Records an operation that started at begin. Slow ones are kept with the plan of sql.
+     * @param cursorNanos time its cursor was open, 0 without cursor
+     * @param sql query to explain if slow, null for writes
+     */
+    protected void measure(Metrics metrics, Metrics.Op op, long begin, long cursorNanos, int rows,
+                           @Nullable String sql, @Nullable Object[] args) {
+        long nanos = System.nanoTime() - begin;
+        metrics.record(table(), op, nanos, cursorNanos, rows);
+
+        if (metrics.isSlow(nanos)) {
+            List<String> plan = Collections.emptyList();
+            if (sql != null) {
+                String key = mDatabase.getPath() + "/" + sql;
+                plan = sPlans.get(key);
+                if (plan == null) {
+                    try {
+                        plan = explain(sql, text(args));
+                    } catch (SQLException e) {
+                        Log.e(TAG, "No plan for " + sql + ": " + e.getMessage(), e);
+                        plan = Collections.emptyList();
+                    }
+                    sPlans.put(key, plan);
+                }
+            }
+            metrics.slow(new Metrics.SlowQuery(table(), op, sql != null ? sql : op.name(), nanos, plan));
         }
+    }
 
+    //////// SQL CACHE ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * SQL text by query shape. Repeated calls skip building the WHERE and ORDER BY,
+     * and hand SQLite the very same string so its prepared statement cache is hit too.
+     */
+    private final LruCache<QueryShape, String> mSqlCache = new LruCache<>(SQL_CACHE_SIZE);
+
+    /**
+     * Shape of a list select, resolving every null to the lab default.
+     */
+    protected QueryShape shape(@Nullable String table, @Nullable String[] columns, @Nullable String[] where,
+                               @Nullable String orderBy, @Nullable String query, boolean isExact,
+                               @Nullable String groupBy, @Nullable String having, @Nullable String limit,
+                               boolean orderByTime, boolean ascOrder, boolean hasRange) {
+        String[] theWhere = null;
         if (!isEmpty(query)) {
-            String[] theWhere;
+            theWhere = where != null ? where : where();
+        }
+
+        String theOrderBy;
+        if (orderByTime) {
+            theOrderBy = when();
+        } else {
+            theOrderBy = orderBy != null ? orderBy : orderBy();
+        }
+
+        return new QueryShape(
+                null != table ? table : table(),
+                columns,
+                theWhere,
+                theOrderBy,
+                groupBy != null ? groupBy : groupBy(),
+                having != null ? having : having(),
+                limit,
+                false,
+                isExact,
+                orderByTime,
+                ascOrder,
+                hasRange);
+    }
+
+    /**
+     * @param shape query shape
+     * @return cached or freshly built SQL for that shape
+     */
+    protected String sql(QueryShape shape) {
+        String sql = mSqlCache.get(shape);
+        if (sql == null) {
+            sql = buildSql(shape);
+            mSqlCache.put(shape, sql);
+        }
+        return sql;
+    }
+
+    private String buildSql(QueryShape shape) {
+        StringBuilder queryBuilder = new StringBuilder();
+        String[] where = shape.getWhere();
+
+        if (shape.isById()) {
+            queryBuilder.append(ID).append(" = ?");
+
+        } else if (where != null) {
+            for (String column : where) {
+                if (queryBuilder.length() > 0) {
+                    queryBuilder.append(shape.isExact() ? " AND " : " OR ");
+                }
+                queryBuilder.append(column).append(shape.isExact() ? " = ?" : " LIKE ?");
+            }
+        }
+
+        if (shape.hasRange()) {
+            if (queryBuilder.length() > 0) {
+                queryBuilder.insert(0, "(").append(") AND ");
+            }
+            queryBuilder.append(when()).append(" > ? AND ").append(when()).append(" < ?");
+        }
 
-            if (where != null) {
-                theWhere = where;
+        String sortOrder = null;
+        if (shape.getOrderBy() != null) {
+            if (shape.isOrderByTime()) {
+                sortOrder = shape.getOrderBy();
             } else {
-                theWhere = where();
+                sortOrder = "lower(" + shape.getOrderBy() + ")";
             }
+            sortOrder += shape.isAscOrder() ? ASC : DESC;
+        }
 
-            if (theWhere != null) {
-                for (int i = 0; i < theWhere.length; i++) {
-                    if (isExact) {
-                        if (queryBuilder.length() > 0) {
-                            queryBuilder.append(" AND ");
-                        }
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(shape.getTable());
+        return builder.buildQuery(shape.getColumns(), queryBuilder.toString(),
+                shape.getGroupBy(), shape.getHaving(), sortOrder, shape.getLimit());
+    }
+
+    /**
+     * Same as bindArgs(...), every argument as text.
+     * @return arguments in the order sql(shape) expects them
+     */
+    protected String[] whereArgs(@Nullable String query, QueryShape shape,
+                                 @Nullable DateTime start, @Nullable DateTime end) {
+        return text(bindArgs(query, shape, start, end));
+    }
+
+    /**
+     * @param query search criteria or id
+     * @param shape query shape the arguments are for
+     * @param start start date for range when()
+     * @param end end date for range when()
+     * @return arguments in the order sql(shape) expects them, the when() range as Long millis
+     */
+    protected Object[] bindArgs(@Nullable String query, QueryShape shape,
+                                @Nullable DateTime start, @Nullable DateTime end) {
+        String[] where = shape.getWhere();
+        int size = shape.isById() ? 1 : where != null ? where.length : 0;
+        Object[] args = new Object[shape.hasRange() ? size + 2 : size];
+
+        if (size > 0) {
+            String arg = shape.isById() || shape.isExact() ? query : likeParams(query.toLowerCase());
+            Arrays.fill(args, 0, size, arg);
+        }
+
+        if (shape.hasRange()) {
+            args[size] = start.getMillis();
+            args[size + 1] = end.getMillis();
+        }
+
+        return args;
+    }
+
+    /**
+     * rawQuery(...) that binds every argument by type, see bind(...), instead of as text.
+     * Longs compare with INTEGER columns without a text to number conversion per row.
+     * @param sql query
+     * @param args arguments, may be null
+     * @return cursor
+     */
+    protected Cursor query(String sql, @Nullable final Object[] args) {
+        if (args == null || args.length == 0) {
+            return mDatabase.rawQuery(sql, null);
+        }
+        return mDatabase.rawQueryWithFactory(new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+                for (int i = 0; i < args.length; i++) {
+                    bind(query, i + 1, args[i]);
+                }
+                return new SQLiteCursor(driver, editTable, query);
+            }
+        }, sql, null, null);
+    }
+
+    private static String[] text(@Nullable Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        String[] text = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            text[i] = args[i] != null ? args[i].toString() : null;
+        }
+        return text;
+    }
+
+    public int sqlCacheHits() {
+        return mSqlCache.hitCount();
+    }
+
+    public int sqlCacheMisses() {
+        return mSqlCache.missCount();
+    }
+
+    //////// ASYNC ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Query threads. SQLite serves a handful of concurrent readers, more threads only queue.
+     */
+    public static final int QUERY_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Queries waiting for a thread. Past it the oldest waiting query is cancelled, the latest
+     * request is the one still wanted.
+     */
+    public static final int QUERY_QUEUE = 64;
+
+    private static final ThreadPoolExecutor QUERY_POOL = new ThreadPoolExecutor(
+            QUERY_THREADS, QUERY_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(QUERY_QUEUE),
+            new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG + "-query-" + mCount.incrementAndGet());
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            },
+            new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                    if (executor.isShutdown()) {
+                        return;
+                    }
+                    Runnable oldest = executor.getQueue().poll();
+                    if (oldest instanceof Future) {
+                        ((Future<?>) oldest).cancel(false); // no callback, get() throws CancellationException
+                    }
+                    executor.execute(runnable);
+                }
+            });
+
+    static {
+        QUERY_POOL.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Executor MAIN_THREAD = new Executor() {
+        private Handler mHandler;
+
+        @Override
+        public synchronized void execute(Runnable runnable) {
+            if (mHandler == null) {
+                mHandler = new Handler(Looper.getMainLooper());
+            }
+            mHandler.post(runnable);
+        }
+    };
+
+    /**
+     * Receives the outcome of a query run on the query pool. Not called if it was cancelled.
+     */
+    public interface QueryCallback<R> {
+        void onResult(R result);
+        void onError(Exception e);
+    }
+
+    /**
+     * Runs any query on the query pool. Cancelling the future interrupts the row mapping.
+     * If QUERY_QUEUE queries are already waiting the oldest of them is cancelled.
+     * @param query work to run off the calling thread
+     * @param callback result receiver, may be null
+     * @param deliverOn executor to call back on. If null main thread
+     * @return future to cancel or wait for the query
+     */
+    public <R> Future<R> submit(Callable<R> query, @Nullable QueryCallback<R> callback, @Nullable Executor deliverOn) {
+        QueryTask<R> task = new QueryTask<>(query, callback, deliverOn != null ? deliverOn : MAIN_THREAD);
+        QUERY_POOL.execute(task);
+        return task;
+    }
+
+    private static final class QueryTask<R> extends FutureTask<R> {
+        private final QueryCallback<R> mCallback;
+        private final Executor mDeliverOn;
+
+        QueryTask(Callable<R> callable, QueryCallback<R> callback, Executor deliverOn) {
+            super(callable);
+            mCallback = callback;
+            mDeliverOn = deliverOn;
+        }
 
-                        queryBuilder.append(theWhere[i]).append(" = ?");
-                        params.add(query);
+        @Override
+        protected void done() {
+            if (mCallback == null || isCancelled()) {
+                return;
+            }
+
+            R result = null;
+            Exception error = null;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (InterruptedException e) {
+                return;
+            }
 
+            final R theResult = result;
+            final Exception theError = error;
+            mDeliverOn.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    if (theError != null) {
+                        mCallback.onError(theError);
                     } else {
-                        if (queryBuilder.length() > 0) {
-                            queryBuilder.append(" OR ");
-                        }
+                        mCallback.onResult(theResult);
+                    }
+                }
+            });
+        }
+    }
+
+    //////// INDEXES ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Parent key columns searched through children(...). Each one gets composite indexes
+     * with when() and lower(orderBy()).
+     * @return parent columns, null if none
+     */
+    public String[] parents() {
+        return null;
+    }
+
+    public void createIndexes() {
+        createIndexes(mDatabase);
+    }
+
+    /**
+     * Creates the indexes list queries need: when(), lower(orderBy()) and the parents()
+     * composites, and with fullText() rebuilds the shadow table of the new table. Call it
+     * from DbHelper after creating or upgrading the table.
+     * @param db database being created or upgraded
+     */
+    public void createIndexes(SQLiteDatabase db) {
+        String when = when();
+        String orderBy = orderBy();
 
-                        queryBuilder.append(theWhere[i]).append(" LIKE ?");
-                        params.add(likeParams(query.toLowerCase()));
-                    }
+        if (when != null) {
+            index(db, when, when);
+        }
+        if (orderBy != null) {
+            orderIndex(db, null, orderBy);
+        }
+        String[] parents = parents();
+        if (parents != null) {
+            for (String parent : parents) {
+                if (when != null) {
+                    index(db, parent + "_" + when, parent + COMMA + when);
+                }
+                if (orderBy != null) {
+                    orderIndex(db, parent, orderBy);
                 }
             }
         }
+        String[] keys = conflict();
+        if (keys != null && keys.length > 0 && !uniqueOn(db, keys)) {
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + table() + "_" + join(keys, "", "_") + KEY
+                    + ON + table() + " (" + join(keys, "", COMMA) + ")");
+        }
+        if (fullText()) {
+            fullText(db, true);
+        }
+        forgetSchema(db);
+    }
 
-        if (orderByTime) {
-            orderBuilder.append(when());
-
-            if (ascOrder) {
-                orderBuilder.append(" ASC ");
-            } else {
-                orderBuilder.append(" DESC ");
+    /**
+     * @param db database
+     * @param keys columns
+     * @return true if a UNIQUE index or constraint of table() covers exactly keys
+     */
+    private boolean uniqueOn(SQLiteDatabase db, String[] keys) {
+        HashSet<String> wanted = new HashSet<>(Arrays.asList(keys));
+        ArrayList<String> uniques = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("PRAGMA index_list(" + table() + ")", null);
+            int name = cursor.getColumnIndex("name");
+            int unique = cursor.getColumnIndex("unique");
+            while (cursor.moveToNext()) {
+                if (cursor.getInt(unique) != 0) {
+                    uniques.add(cursor.getString(name));
+                }
             }
+        } finally {
+            mDbManager.close(cursor);
+        }
 
-        } else {
-            orderBuilder.append("lower(");
-            if (orderBy == null) {
-
-                orderBuilder.append(orderBy());
-            } else {
-                orderBuilder.append(orderBy);
+        for (String index : uniques) {
+            HashSet<String> columns = new HashSet<>();
+            try {
+                cursor = db.rawQuery("PRAGMA index_info(" + index + ")", null);
+                int name = cursor.getColumnIndex("name");
+                while (cursor.moveToNext()) {
+                    columns.add(cursor.getString(name));
+                }
+            } finally {
+                mDbManager.close(cursor);
             }
-
-            orderBuilder.append(")");
-
-            if (ascOrder) {
-                orderBuilder.append(" ASC ");
-            } else {
-                orderBuilder.append(" DESC ");
+            if (columns.equals(wanted)) {
+                return true;
             }
         }
+        return false;
+    }
 
-        if (null != start && null != end) {
-            if (queryBuilder.length() > 0) {
-                queryBuilder.append(" AND ");
+    public void dropIndexes(SQLiteDatabase db) {
+        Cursor cursor = null;
+        ArrayList<String> indexes = new ArrayList<>();
+        try {
+            cursor = db.rawQuery("select name from sqlite_master where type='index' and tbl_name = ? and name like ?",
+                    new String[]{table(), table() + "%" + INDEX});
+            while (cursor.moveToNext()) {
+                indexes.add(cursor.getString(0));
             }
-
-            queryBuilder.append(when()).append(">?");
-            params.add(String.valueOf(start.getMillis()));
-
-            queryBuilder.append(" AND ");
-            queryBuilder.append(when()).append("<?");
-            params.add(String.valueOf(end.getMillis()));
+        } finally {
+            mDbManager.close(cursor);
+        }
+        for (String index : indexes) {
+            db.execSQL(DROP_INDEX_IF_EXISTS + index);
         }
+        forgetSchema(db);
+    }
 
-        String theGroupBy;
-        String theHaving;
+    private void index(SQLiteDatabase db, String name, String columns) {
+        db.execSQL(CREATE_INDEX_IF_NOT_EXISTS + table() + "_" + name + INDEX + ON + table() + " (" + columns + ")");
+    }
 
-        if (groupBy != null) {
-            theGroupBy = groupBy;
-        } else {
-            theGroupBy = groupBy();
+    private void orderIndex(SQLiteDatabase db, @Nullable String parent, String orderBy) {
+        String name = (parent != null ? parent + "_" : "") + "lower_" + orderBy;
+        String lower = "lower(" + orderBy + ")";
+        try {
+            index(db, name, parent != null ? parent + COMMA + lower : lower);
+        } catch (SQLiteException e) {
+            // Expression indexes need SQLite 3.9 (Android 7), a plain index still serves exact().
+            Log.w(TAG, "No expression index on " + lower + ": " + e.getMessage());
+            index(db, (parent != null ? parent + "_" : "") + orderBy,
+                    parent != null ? parent + COMMA + orderBy : orderBy);
         }
+    }
 
-        if (having != null) {
-            theHaving = having;
-        } else {
-            theHaving = having();
+    /**
+     * @param sql any select
+     * @param args its arguments
+     * @return EXPLAIN QUERY PLAN detail lines
+     */
+    public ArrayList<String> explain(String sql, @Nullable String[] args) {
+        ArrayList<String> plan = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = mDatabase.rawQuery(EXPLAIN_QUERY_PLAN + sql, args);
+            int detail = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        } finally {
+            mDbManager.close(cursor);
         }
+        return plan;
+    }
 
-        queryArgs = queryBuilder.toString(); // Column = ? // LIKE ?
-        whereArgs = new String[params.size()]; // {"string", "date", "integer", "etc"}
-        params.toArray(whereArgs);
-
-        sortOrder = orderBuilder.toString();
+    /**
+     * Checks with EXPLAIN QUERY PLAN that list(...) and children(...) of every parents()
+     * column are served by an index, without sorting in a temp B-tree. Misses are logged.
+     * @return true if every plan uses its index
+     */
+    public boolean verifyIndexes() {
+        ArrayList<QueryShape> shapes = new ArrayList<>();
+        ArrayList<String[]> args = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            boolean orderByTime = i == 0;
+            if ((orderByTime ? when() : orderBy()) == null) {
+                continue;
+            }
 
-        try {
+            shapes.add(shape(null, null, null, null, null, false, null, null, null, orderByTime, true, false));
+            args.add(null);
 
-            SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-            builder.setTables(theTable);
-            String sql = builder.buildQuery(columns, queryArgs, theGroupBy, theHaving, sortOrder, limit);
+            String[] parents = parents();
+            if (parents != null) {
+                for (String parent : parents) {
+                    shapes.add(shape(null, null, new String[]{parent}, null, "1", true, null, null, null,
+                            orderByTime, true, false));
+                    args.add(new String[]{"1"});
+                }
+            }
+        }
 
-            if (printLog) {
-                Log.v(TAG, sql + logSelect(query));
+        boolean indexed = true;
+        for (int i = 0; i < shapes.size(); i++) {
+            String sql = sql(shapes.get(i));
+            boolean search = shapes.get(i).getWhere() != null;
+            for (String detail : explain(sql, args.get(i))) {
+                if (detail.contains("TEMP B-TREE") || (search && !detail.contains("INDEX"))) {
+                    Log.w(TAG, "Not indexed: " + sql + " -> " + detail);
+                    indexed = false;
+                }
             }
+        }
+        return indexed;
+    }
+
+    //////// COMMON QUERIES ///////////////////////////////////////////////////////////////////////
 
+    /**
+     * @param start start date for range when(), null for all rows
+     * @param end end date for range when()
+     * @return rows in range
+     */
+    public long count(@Nullable DateTime start, @Nullable DateTime end) {
+        return (long) scalar("count(*)", start, end);
+    }
 
-            if (asyncTask) {
-                HeavyTask heavyTask = new HeavyTask();
-                heavyTask.execute(new String[]{sql}, whereArgs);
+    /**
+     * @param column numeric column
+     * @param start start date for range when(), null for all rows
+     * @param end end date for range when()
+     * @return sum, 0 if no rows
+     */
+    public double sum(String column, @Nullable DateTime start, @Nullable DateTime end) {
+        return scalar("total(" + column + ")", start, end);
+    }
 
-                try {
+    public double min(String column, @Nullable DateTime start, @Nullable DateTime end) {
+        return scalar("min(" + column + ")", start, end);
+    }
 
-                    cursor = heavyTask.get();
+    public double max(String column, @Nullable DateTime start, @Nullable DateTime end) {
+        return scalar("max(" + column + ")", start, end);
+    }
 
-                } catch (InterruptedException e) {
-                    Log.e(TAG, e.getMessage());
-                } catch (ExecutionException e) {
-                    Log.e(TAG, e.getMessage(), e.fillInStackTrace());
-                }
+    /**
+     * @param column numeric column
+     * @param start start date for range when(), null for all rows
+     * @param end end date for range when()
+     * @return average, NaN if no rows
+     */
+    public double mean(String column, @Nullable DateTime start, @Nullable DateTime end) {
+        return scalar("avg(" + column + ")", start, end);
+    }
 
+    /**
+     * @param column any column
+     * @param start start date for range when(), null for all rows
+     * @param end end date for range when()
+     * @return most frequent non null value, null if none
+     */
+    public String mode(String column, @Nullable DateTime start, @Nullable DateTime end) {
+        String sql = SELECT + column + FROM + table() + WHERE + column + NOT_NULL + range(start, end)
+                + GROUP_BY + column + ORDER_BY + COUNT + "(*)" + DESC + LIMIT + "1";
+        return string(sql, rangeArgs(start, end));
+    }
 
-            } else  {
-                cursor = mDatabase.rawQuery(sql, whereArgs);
-            }
+    /**
+     * Sample variance in one streaming pass over the column only (Welford), stable even
+     * where the sum of squares would lose precision.
+     * @param column numeric column
+     * @param start start date for range when(), null for all rows
+     * @param end end date for range when()
+     * @return variance, NaN if less than two values
+     */
+    public double variance(String column, @Nullable DateTime start, @Nullable DateTime end) {
+        String sql = SELECT + column + FROM + table() + WHERE + column + NOT_NULL + range(start, end);
+        if (printLog) {
+            Log.v(TAG, sql);
+        }
 
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    T t = model(cursor);
-                    objects.add(t);
-                }
-            }
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        Object[] args = rangeArgs(start, end);
 
+        long n = 0;
+        double mean = 0;
+        double squares = 0;
+        Cursor cursor = null;
+        try {
+            cursor = query(sql, args);
+            while (cursor.moveToNext()) {
+                double value = cursor.getDouble(0);
+                double delta = value - mean;
+                mean += delta / ++n;
+                squares += delta * (value - mean);
+            }
         } finally {
             mDbManager.close(cursor);
         }
 
-        return objects;
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.META, begin, System.nanoTime() - begin, (int) n, sql, args);
+        }
+        return n > 1 ? squares / (n - 1) : Double.NaN;
     }
 
-    //////// ASYNC TASK ///////////////////////////////////////////////////////////////////////////
+    public double standardDeviation(String column, @Nullable DateTime start, @Nullable DateTime end) {
+        return Math.sqrt(variance(column, start, end));
+    }
 
-    public class HeavyTask extends AsyncTask<String[], Integer, Cursor> {
+    /**
+     * Nearest rank percentile, sorted and picked by SQLite in two passes over the range: a
+     * count, then an ordered walk to that rank. Rows not stored as numbers are skipped.
+     * @param column numeric column
+     * @param percentile 0 to 1, 0.5 for the median
+     * @param start start date for range when(), null for all rows
+     * @param end end date for range when()
+     * @return value at percentile, NaN if no rows
+     */
+    public double percentile(String column, double percentile, @Nullable DateTime start, @Nullable DateTime end) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile " + percentile + " not in [0, 1]");
+        }
 
-        @Override
-        protected Cursor doInBackground(String[]... params) {
-            if (printLog) {
-                Log.v(TAG, "Starting asyncTask");
-            }
-                return mDatabase.rawQuery(params[0][0], params[1]);
-            }
+        String from = FROM + table() + WHERE + "typeof(" + column + ") IN ('integer', 'real')" + range(start, end);
+        String sql = SELECT + column + from + ORDER_BY + column + LIMIT + "1 OFFSET ("
+                + SELECT + "CAST((count(*) - 1) * " + percentile + " AS INTEGER)" + from + ")";
 
-            @Override
-            protected void onPostExecute(Cursor cursor) {
-                super.onPostExecute(cursor);
-            if (printLog) {
-                Log.v(TAG, "Asynctask complete");
-            }
+        Object[] args = rangeArgs(start, end);
+        if (args != null) {
+            args = new Object[]{args[0], args[1], args[0], args[1]};
         }
-    }
 
-    //////// COMMON QUERIES ///////////////////////////////////////////////////////////////////////
+        return number(sql, args);
+    }
 
     /**
-     *
-     * @param table
-     * @param value
-     * @return
+     * One aggregate per group in a single pass.
+     * @param function count, sum, total, min, max or avg
+     * @param column aggregated column, * for count
+     * @param groupBy group column. If null groupBy()
+     * @param having filter on groups. If null having()
+     * @param start start date for range when(), null for all rows
+     * @param end end date for range when()
+     * @return aggregate by group value, in group order
      */
-    public T mode(String table, String value) {
-        // todo test
-        T t = null;
-        Cursor cursor = null;
-        String times = "times";
-        String selectedTable = null;
-
-        String selection = SELECT + "`" + value + "`," + COUNT + "(*) " + AS + "`" + times + "`" +
-                            FROM + table;
-                // + LIMIT + "1";
-                //+ GROUP_BY + "`" + value +"`" + ORDER_BY + "`" + times + "`" +
+    public LinkedHashMap<String, Double> aggregate(String function, String column,
+                                                   @Nullable String groupBy, @Nullable String having,
+                                                   @Nullable DateTime start, @Nullable DateTime end) {
+        if (!AGGREGATES.contains(function.toLowerCase())) {
+            throw new IllegalArgumentException("Unknown aggregate " + function);
+        }
 
+        String theGroupBy = groupBy != null ? groupBy : groupBy();
+        String theHaving = having != null ? having : having();
+        String range = range(start, end);
 
-        try {
-            if (printLog) {
-                Log.v(TAG, selection);
+        StringBuilder builder = new StringBuilder(SELECT)
+                .append(theGroupBy != null ? theGroupBy : "NULL").append(COMMA)
+                .append(function).append("(").append(column).append(")")
+                .append(FROM).append(table());
+        if (range.length() > 0) {
+            builder.append(WHERE).append(range.substring(AND.length()));
+        }
+        if (theGroupBy != null) {
+            builder.append(GROUP_BY).append(theGroupBy);
+            if (theHaving != null) {
+                builder.append(HAVING).append(theHaving);
             }
+            builder.append(ORDER_BY).append(theGroupBy);
+        }
+
+        String sql = builder.toString();
+        if (printLog) {
+            Log.v(TAG, sql);
+        }
 
-            cursor = mDatabase.rawQuery(selection, null);
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        Object[] args = rangeArgs(start, end);
 
-            if (cursor != null && cursor.moveToFirst()) {
-                t = model(cursor);
+        LinkedHashMap<String, Double> groups = new LinkedHashMap<>();
+        Cursor cursor = null;
+        try {
+            cursor = query(sql, args);
+            while (cursor.moveToNext()) {
+                groups.put(cursor.getString(0), cursor.isNull(1) ? Double.NaN : cursor.getDouble(1));
             }
         } finally {
             mDbManager.close(cursor);
         }
-        return t;
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.META, begin, System.nanoTime() - begin, groups.size(), sql, args);
+        }
+        return groups;
+    }
+
+    private static final List<String> AGGREGATES = Arrays.asList("count", "sum", "total", "min", "max", "avg");
+
+    private double scalar(String expression, @Nullable DateTime start, @Nullable DateTime end) {
+        String range = range(start, end);
+        String sql = SELECT + expression + FROM + table();
+        if (range.length() > 0) {
+            sql += WHERE + range.substring(AND.length());
+        }
+        return number(sql, rangeArgs(start, end));
     }
 
     /**
-     *
-     * @param table
-     * @param value
-     * @return
+     * @return first column of the first row, NaN if no row or NULL
      */
-    public T mean(String table, String value) {
-        // todo test
-        T t = null;
-        Cursor cursor = null;
-        String times = "times";
-        String selectedTable = null;
-
-        String selection = SELECT + "`" + value + "`," + COUNT + "(*) " + AS + "`" + times + "`" +
-                FROM + table;
-        // + LIMIT + "1";
-        //+ GROUP_BY + "`" + value +"`" + ORDER_BY + "`" + times + "`" +
+    private double number(String sql, @Nullable Object[] args) {
+        if (printLog) {
+            Log.v(TAG, sql);
+        }
 
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        double value = Double.NaN;
 
+        Cursor cursor = null;
         try {
-            if (printLog) {
-                Log.v(TAG, selection);
+            cursor = query(sql, args);
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                value = cursor.getDouble(0);
             }
+        } finally {
+            mDbManager.close(cursor);
+        }
 
-            cursor = mDatabase.rawQuery(selection, null);
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.META, begin, System.nanoTime() - begin, 1, sql, args);
+        }
+        return value;
+    }
 
-            if (cursor != null && cursor.moveToFirst()) {
-                t = model(cursor);
-            }
+    private String string(String sql, @Nullable Object[] args) {
+        if (printLog) {
+            Log.v(TAG, sql);
+        }
+
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+        String value;
+
+        Cursor cursor = null;
+        try {
+            cursor = query(sql, args);
+            value = cursor.moveToFirst() ? cursor.getString(0) : null;
         } finally {
             mDbManager.close(cursor);
         }
-        return t;
+
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.META, begin, System.nanoTime() - begin, 1, sql, args);
+        }
+        return value;
+    }
+
+    /**
+     * @return " AND when() > ? AND when() < ?", empty without a full range
+     */
+    private String range(@Nullable DateTime start, @Nullable DateTime end) {
+        if (start == null || end == null) {
+            return "";
+        }
+        return AND + when() + " > ?" + AND + when() + " < ?";
     }
 
-    public void standardDeviation() {
-        // TODO
+    private Object[] rangeArgs(@Nullable DateTime start, @Nullable DateTime end) {
+        if (start == null || end == null) {
+            return null;
+        }
+        return new Object[]{start.getMillis(), end.getMillis()};
     }
 
     //////// META QUERIES ///////////////////////////////////////////////////////////////////////
@@ -673,6 +2898,9 @@ public abstract class TableLab<T> {
             // Log.v(TAG, select);
         }
 
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
         int count = -1;
         Cursor cursor = null;
         try {
@@ -684,6 +2912,10 @@ public abstract class TableLab<T> {
             mDbManager.close(cursor);
         }
 
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.META, begin, System.nanoTime() - begin, 1, select, null);
+        }
+
         if (count > 0) {
             return true;
         }
@@ -691,51 +2923,78 @@ public abstract class TableLab<T> {
         return false;
     }
 
-    public ArrayList<String> tables() {
-        String select = "select name from sqlite_master where type='table' order by name";
-        if (printLog) {
-            // Log.v(TAG, select);
-        }
-        ArrayList<String> tables = new ArrayList<>();
-        Cursor cursor = mDatabase.rawQuery(select, null);
-        while (cursor.moveToNext()) {
-            tables.add(cursor.getString(0));
+    //////// SCHEMA ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Snapshots by database path.
+     */
+    private static final HashMap<String, Schema> sSchemas = new HashMap<>();
+
+    /**
+     * Cached schema snapshot. Read again only after DDL run by the library, after
+     * invalidateSchema() or when user_version changed.
+     * @return tables, views, columns and indexes
+     */
+    public Schema snapshot() {
+        String path = mDatabase.getPath();
+        int userVersion = mDatabase.getVersion();
+
+        synchronized (sSchemas) {
+            Schema schema = sSchemas.get(path);
+            if (schema == null || schema.getUserVersion() != userVersion) {
+                if (printLog) {
+                    Log.v(TAG, "Reading schema of " + path);
+                }
+                schema = Schema.read(mDatabase);
+                sSchemas.put(path, schema);
+            }
+            return schema;
         }
-        cursor.close();
-        return tables;
     }
 
-    public ArrayList<String> views() {
-        String select = "select name from sqlite_master where type='view' order by name";
-        if (printLog) {
-            // Log.v(TAG, select);
+    static void forgetSchema(SQLiteDatabase db) {
+        synchronized (sSchemas) {
+            sSchemas.remove(db.getPath());
         }
-        ArrayList<String> tables = new ArrayList<>();
-        Cursor cursor = mDatabase.rawQuery(select, null);
-        while (cursor.moveToNext()) {
-            tables.add(cursor.getString(0));
-        }
-        cursor.close();
-        return tables;
+        sPlans.evictAll(); // indexes changed, so may the plans
     }
 
-    public ArrayList<String> columns(String table) {
-        String select = "PRAGMA table_info(" + table + ")";
-        if (printLog) {
-            // Log.v(TAG, select);
+    /**
+     * Call after running DDL outside the library.
+     */
+    public void invalidateSchema() {
+        synchronized (sSchemas) {
+            sSchemas.remove(mDatabase.getPath());
         }
+    }
+
+    public ArrayList<String> tables() {
+        return new ArrayList<>(snapshot().getTables());
+    }
 
+    public ArrayList<String> views() {
+        return new ArrayList<>(snapshot().getViews());
+    }
+
+    public ArrayList<String> columns(String table) {
         ArrayList<String> columns = new ArrayList<>();
-        Cursor cursor = mDatabase.rawQuery(select, null);
-        while (cursor.moveToNext()) {
-            columns.add(cursor.getString(1));
+        List<Schema.Column> known = snapshot().getColumns(table);
+        if (known != null) {
+            for (Schema.Column column : known) {
+                columns.add(column.getName());
+            }
         }
-        cursor.close();
         return columns;
     }
 
     public int entries() {
+        Metrics metrics = sMetrics;
+        long begin = metrics != null ? System.nanoTime() : 0;
+
         int count = (int) DatabaseUtils.queryNumEntries(mDatabase, table());
+        if (metrics != null) {
+            measure(metrics, Metrics.Op.META, begin, 0, 1, SELECT_COUNT_ALL_FROM + table(), null);
+        }
         if (printLog) {
             Log.v(TAG, "Table " + table() + " has " + String.valueOf(count) + " entries");
         }
@@ -760,31 +3019,17 @@ public abstract class TableLab<T> {
     }
 
     public String schema() {
-
+        Schema snapshot = snapshot();
         ArrayList<String> schema = new ArrayList<>();
-        int max = tables().size();
-        schema.add("TABLES\n");
 
-        for (int i = 0; i < max; i++) {
-            StringBuilder builder = new StringBuilder();
-            String table = tables().get(i);
-            String columns = columns(table).toString();
-            builder.append(table).append(": ");
-            builder.append(columns);
-            builder.append("\n");
-            schema.add(builder.toString());
+        schema.add("TABLES\n");
+        for (String table : snapshot.getTables()) {
+            schema.add(table + ": " + snapshot.getColumns(table) + " " + snapshot.getIndexes(table) + "\n");
         }
 
         schema.add("\nVIEWS\n");
-        int remax = views().size();
-        for (int i = 0; i < remax; i++) {
-            StringBuilder builder2 = new StringBuilder();
-            String view = views().get(i);
-            String columns = columns(view).toString();
-            builder2.append(view).append(": ");
-            builder2.append(columns);
-            builder2.append("\n");
-            schema.add(builder2.toString());
+        for (String view : snapshot.getViews()) {
+            schema.add(view + ": " + snapshot.getColumns(view) + "\n");
         }
 
         String result = schema.toString();
@@ -806,11 +3051,72 @@ public abstract class TableLab<T> {
 
         // Log.v(TAG, "-*\n");
         if (includeData) {
-            Log.v(TAG,"");
-            for (int i = 0; i > entries(); i++) {
-                T t = find(i);
-                Log.v(TAG, t.toString());
+            DumpSink sink = DumpSink.logcat(TAG);
+            try {
+                dump(sink, null, 0, false);
+            } catch (IOException e) {
+                Log.e(TAG, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Streams the table through one cursor into sink, nothing is kept in memory but the
+     * current row. The first line holds the column names. Closes sink.
+     * @param sink DumpSink.logcat(tag), DumpSink.file(file) ...
+     * @param columns columns to dump. If null all
+     * @param limit rows to dump. If < 1 all
+     * @param csv choose CSV | values separated by |
+     * @return rows written
+     */
+    public int dump(DumpSink sink, @Nullable String[] columns, int limit, boolean csv) throws IOException {
+        String sql = SELECT + (columns != null ? join(columns, "", COMMA) : "*") + FROM + table()
+                + (limit > 0 ? LIMIT + limit : "");
+        if (printLog) {
+            Log.v(TAG, sql);
+        }
+
+        int rows = 0;
+        Cursor cursor = null;
+        StringBuilder line = new StringBuilder(256);
+        String separator = csv ? COMMA : " | ";
+
+        try {
+            cursor = mDatabase.rawQuery(sql, null);
+            int count = cursor.getColumnCount();
+
+            for (int i = 0; i < count; i++) {
+                field(line.append(i > 0 ? separator : ""), cursor.getColumnName(i), csv);
+            }
+            sink.line(line);
+
+            while (cursor.moveToNext()) {
+                line.setLength(0);
+                for (int i = 0; i < count; i++) {
+                    line.append(i > 0 ? separator : "");
+                    if (cursor.getType(i) == Cursor.FIELD_TYPE_BLOB) {
+                        line.append("<blob ").append(cursor.getBlob(i).length).append(" bytes>");
+                    } else if (!cursor.isNull(i)) {
+                        field(line, cursor.getString(i), csv);
+                    }
+                }
+                sink.line(line);
+                rows++;
             }
+        } finally {
+            mDbManager.close(cursor);
+            sink.close();
+        }
+
+        return rows;
+    }
+
+    private static void field(StringBuilder line, String value, boolean csv) {
+        if (csv && (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)) {
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        } else {
+            line.append(value);
         }
     }
 
@@ -820,7 +3126,11 @@ public abstract class TableLab<T> {
         return DateTime.now();
     }
 
-    public static DateTime date(int given) {
+    /**
+     * @param given epoch millis as stored by values(t)
+     * @return date, build it only where it is shown
+     */
+    public static DateTime date(long given) {
         return new DateTime(given);
     }
 
@@ -833,13 +3143,67 @@ public abstract class TableLab<T> {
         return composed;
     }
 
+    public static String insertSql(String table, String[] columns) {
+        return insertSql(INSERT_INTO, table, columns);
+    }
+
+    /**
+     * @param insert INSERT_INTO | INSERT_OR_IGNORE_INTO ...
+     * @param table table name
+     * @param columns columns to bind, in order
+     * @return INSERT with one ? per column
+     */
+    public static String insertSql(String insert, String table, String[] columns) {
+        StringBuilder builder = new StringBuilder(insert).append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            builder.append(i > 0 ? COMMA : "").append(columns[i]);
+        }
+        builder.append(")").append(VALUES).append("(");
+        for (int i = 0; i < columns.length; i++) {
+            builder.append(i > 0 ? ",?" : "?");
+        }
+        return builder.append(")").toString();
+    }
+
+    /**
+     * @return columns each followed by suffix, joined by separator. a = ?, b = ?
+     */
+    public static String join(String[] columns, String suffix, String separator) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            builder.append(i > 0 ? separator : "").append(columns[i]).append(suffix);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Binds a ContentValues style value to a compiled statement or query.
+     * @param program compiled statement or query
+     * @param index 1 based position
+     * @param value null, number, boolean, byte[] or anything else as text
+     */
+    public static void bind(SQLiteProgram program, int index, Object value) {
+        if (value == null) {
+            program.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            program.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            program.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            program.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            program.bindBlob(index, (byte[]) value);
+        } else {
+            program.bindString(index, value.toString());
+        }
+    }
+
     public static BigDecimal decimal(int amount) {
         return new BigDecimal(amount);
     }
 
     public static int randomInt(int range) {
-        Random random = new Random();
-        return random.nextInt(range);
+        return RANDOM.nextInt(range);
     }
 
     public static boolean isEmpty(String string) {
@@ -887,6 +3251,9 @@ public abstract class TableLab<T> {
 
     //////// SEED ///////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Line by line reader of an asset. See Seeder to seed a whole table from it.
+     */
     public static BufferedReader txtReader(Activity activity, String uri) throws IOException {
         return new BufferedReader(new InputStreamReader(activity.getAssets().open(uri)));
     }
@@ -894,7 +3261,9 @@ public abstract class TableLab<T> {
     //////// CONSTANTS easy to i18 ////////////////////////////////////////////////////////////////
 
     protected static final String ID = "id";
+    protected static final String ROWID = "rowid";
     protected static final String PARENT_ID = "parent_id";
+    protected static final String PAGE_KEY = "page_key";
 
     // Numbers
     protected static final String IS_PRIMARY = "name";
@@ -933,28 +3302,47 @@ public abstract class TableLab<T> {
     protected static final String ZOOM = "zoom";
 
     // SQL
+    protected static final String AND = " AND ";
     protected static final String AS = " AS ";
     protected static final String ASC = " ASC ";
     protected static final String COUNT = " COUNT ";
     protected static final String CREATE_TABLE_IF_NOT_EXISTS = "CREATE TABLE IF NOT EXISTS ";
     protected static final String CREATE_TABLE = "CREATE TABLE ";
     protected static final String CREATE_VIEW = "CREATE VIEW ";
+    protected static final String CREATE_INDEX_IF_NOT_EXISTS = "CREATE INDEX IF NOT EXISTS ";
     protected static final String CREATE_VIEW_IF_NOT_EXISTS = "CREATE VIEW IF NOT EXISTS ";
+    protected static final String CREATE_VIRTUAL_TABLE_IF_NOT_EXISTS = "CREATE VIRTUAL TABLE IF NOT EXISTS ";
+    protected static final String CREATE_TRIGGER_IF_NOT_EXISTS = "CREATE TRIGGER IF NOT EXISTS ";
+    protected static final String DOCID = "docid";
     protected static final String COMMA = ",";
     protected static final String DESC = " DESC ";
     protected static final String DROP_TABLE_IF_EXISTS = "DROP TABLE IF EXISTS ";
     protected static final String DROP_VIEW_IF_EXISTS = "DROP VIEW IF EXISTS ";
+    protected static final String DROP_TRIGGER_IF_EXISTS = "DROP TRIGGER IF EXISTS ";
+    protected static final String DROP_INDEX_IF_EXISTS = "DROP INDEX IF EXISTS ";
+    protected static final String EXPLAIN_QUERY_PLAN = "EXPLAIN QUERY PLAN ";
+    protected static final String FTS = "_fts";
+    protected static final String INDEX = "_idx";
+    protected static final String KEY = "_key";
     protected static final String FROM = " FROM ";
     protected static final String GROUP_BY = " GROUP BY ";
+    protected static final String HAVING = " HAVING ";
     protected static final String INNER = " INNER ";
+    protected static final String INSERT_INTO = "INSERT INTO ";
+    protected static final String INSERT_OR_IGNORE_INTO = "INSERT OR IGNORE INTO ";
+    protected static final String INSERT_OR_REPLACE_INTO = "INSERT OR REPLACE INTO ";
     protected static final String INTEGER = " INTEGER";
     protected static final String INTEGER_NOT_NULL = " INTEGER NOT NULL";
     protected static final String JOIN = " JOIN ";
     protected static final String LIMIT = " LIMIT ";
+    protected static final String MATCH = " MATCH ?";
     protected static final String SELECT = "SELECT ";
     protected static final String SELECT_ALL_FROM = "SELECT * FROM ";
     protected static final String SELECT_COUNT_ALL_FROM = "SELECT COUNT(*) FROM ";
+    protected static final String SET = " SET ";
     protected static final String PRIMARY_KEY = " INTEGER PRIMARY KEY";
+    protected static final String PRIMARY_KEY_CONSTRAINT = " PRIMARY KEY";
+    protected static final String NOT_NULL = " NOT NULL";
     protected static final String ON = " ON ";
     protected static final String ORDER_BY = " ORDER BY ";
     protected static final String OUTER = " OUTER ";
@@ -962,6 +3350,8 @@ public abstract class TableLab<T> {
     protected static final String TEXT_NOT_NULL = " TEXT NOT NULL";
     protected static final String WHERE = " WHERE ";
     protected static final String UNIQUE = " UNIQUE ";
+    protected static final String UPDATE = "UPDATE ";
+    protected static final String VALUES = " VALUES ";
 
     // Dates
     protected static final String END_DATE = "end_date";
@@ -972,10 +3362,13 @@ public abstract class TableLab<T> {
     // CRUD
     protected static final String CLOSING = "Closing: ";
     protected static final String DELETING = "Deleting: ";
+    protected static final String BATCH_DELETING = "Batch deleting: ";
     protected static final String OPENING = "Opening: ";
     protected static final String BATCH_SAVING = "Batch saving: ";
     protected static final String SAVING = "Saving: ";
     protected static final String SAVING_WITH_RESPONSE = "Saving with response: ";
     protected static final String UPDATING = "Updating: ";
     protected static final String UPDATING_WITH_RESPONSE = "Updating with response: ";
+    protected static final String BATCH_UPDATING = "Batch updating: ";
+    protected static final String BATCH_UPSERTING = "Batch upserting: ";
 }
@@ -0,0 +1,417 @@
+package com.dominicapps.tablelab.lab.processor;
+
+import com.dominicapps.tablelab.lab.annotations.Column;
+import com.dominicapps.tablelab.lab.annotations.Table;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a RowMapper for every @Table bean at compile time: column ordinals fixed in
+ * code, typed binds into the compiled INSERT and the CREATE TABLE statement. Runs in javac,
+ * nothing of it ships in the app.
+ */
+
+public class TableProcessor extends AbstractProcessor {
+
+    private static final String SUFFIX = "Mapper";
+    private static final String DATE_TIME = "org.joda.time.DateTime";
+
+    /**
+     * How one Java type is stored, read and bound.
+     */
+    private enum Kind {
+        INT(" INTEGER", "int", "cursor.getInt(%s)", "bindLong", "Integer"),
+        LONG(" INTEGER", "long", "cursor.getLong(%s)", "bindLong", "Long"),
+        SHORT(" INTEGER", "short", "cursor.getShort(%s)", "bindLong", "Short"),
+        DOUBLE(" REAL", "double", "cursor.getDouble(%s)", "bindDouble", "Double"),
+        FLOAT(" REAL", "float", "cursor.getFloat(%s)", "bindDouble", "Float"),
+        BOOLEAN(" INTEGER", "boolean", "cursor.getInt(%s) != 0", "bindLong", "Boolean"),
+        STRING(" TEXT", "String", "cursor.getString(%s)", "bindString", null),
+        BLOB(" BLOB", "byte[]", "cursor.getBlob(%s)", "bindBlob", null),
+        DATE(" INTEGER", DATE_TIME, "new " + DATE_TIME + "(cursor.getLong(%s))", "bindLong", null);
+
+        final String sqlType, javaType, read, bind, box;
+
+        Kind(String sqlType, String javaType, String read, String bind, String box) {
+            this.sqlType = sqlType;
+            this.javaType = javaType;
+            this.read = read;
+            this.bind = bind;
+            this.box = box;
+        }
+    }
+
+    /**
+     * One @Column field.
+     */
+    private static final class Field {
+        String name, column, getter, setter;
+        Kind kind;
+        boolean boxed, primaryKey, notNull, unique;
+
+        boolean nullable() {
+            return boxed || kind == Kind.STRING || kind == Kind.BLOB || kind == Kind.DATE;
+        }
+
+        String type() {
+            return boxed ? "java.lang." + kind.box : kind.javaType;
+        }
+
+        String read(String index) {
+            String read = String.format(kind.read, index);
+            if (boxed) {
+                read = "cursor.isNull(" + index + ") ? null : " + kind.box + ".valueOf(" + read + ")";
+            } else if (kind == Kind.DATE) {
+                read = "cursor.isNull(" + index + ") ? null : " + read;
+            }
+            return read;
+        }
+
+        /**
+         * @param value local holding the field
+         * @return value as bound or put: long for dates and booleans, else as is
+         */
+        String stored(String value) {
+            if (kind == Kind.DATE) {
+                return value + ".getMillis()";
+            }
+            if (kind == Kind.BOOLEAN) {
+                return "(" + value + " ? 1L : 0L)";
+            }
+            return value;
+        }
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new HashSet<>(Arrays.asList(Table.class.getCanonicalName(), Column.class.getCanonicalName()));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (Element element : round.getElementsAnnotatedWith(Table.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@Table goes on classes");
+                continue;
+            }
+            TypeElement bean = (TypeElement) element;
+            List<Field> fields = fields(bean);
+            if (fields == null) {
+                continue;
+            }
+            if (fields.isEmpty()) {
+                error(bean, "@Table bean without @Column fields");
+                continue;
+            }
+            try {
+                write(bean, bean.getAnnotation(Table.class).value(), fields);
+            } catch (IOException e) {
+                error(bean, "Cannot write mapper: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return mapped fields in declaration order, null after an error
+     */
+    private List<Field> fields(TypeElement bean) {
+        List<Field> fields = new ArrayList<>();
+        boolean valid = true;
+        boolean hasConstructor = false;
+
+        for (Element member : bean.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.CONSTRUCTOR
+                    && ((ExecutableElement) member).getParameters().isEmpty()
+                    && !member.getModifiers().contains(Modifier.PRIVATE)) {
+                hasConstructor = true;
+            }
+
+            Column column = member.getAnnotation(Column.class);
+            if (column == null || member.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            if (member.getModifiers().contains(Modifier.STATIC)) {
+                error(member, "@Column on a static field");
+                valid = false;
+                continue;
+            }
+
+            VariableElement variable = (VariableElement) member;
+            Field field = new Field();
+            field.name = variable.getSimpleName().toString();
+            field.column = column.value().isEmpty() ? snake(field.name) : column.value();
+            field.primaryKey = column.primaryKey();
+            field.notNull = column.notNull();
+            field.unique = column.unique();
+
+            if (!kind(variable.asType(), field)) {
+                error(member, "Unsupported @Column type " + variable.asType());
+                valid = false;
+                continue;
+            }
+            if (field.primaryKey && field.kind != Kind.INT && field.kind != Kind.LONG) {
+                error(member, "Primary key has to be int or long");
+                valid = false;
+                continue;
+            }
+
+            String capitalized = Character.toUpperCase(field.name.charAt(0)) + field.name.substring(1);
+            if (field.kind == Kind.DATE
+                    && has(bean, "get" + capitalized + "Millis", 0) && has(bean, "set" + capitalized + "Millis", 1)) {
+                // Millis accessors keep rows free of DateTime, the bean builds it on demand
+                field.kind = Kind.LONG;
+                field.getter = "get" + capitalized + "Millis";
+                field.setter = "set" + capitalized + "Millis";
+
+            } else if (variable.getModifiers().contains(Modifier.PRIVATE)) {
+                String is = "is" + capitalized;
+                field.getter = field.kind == Kind.BOOLEAN && !field.boxed && has(bean, is, 0) ? is : "get" + capitalized;
+                field.setter = "set" + capitalized;
+                if (!has(bean, field.getter, 0) || !has(bean, field.setter, 1)) {
+                    error(member, "Private @Column needs " + field.getter + "() and " + field.setter + "(...)");
+                    valid = false;
+                    continue;
+                }
+            }
+            fields.add(field);
+        }
+
+        if (!hasConstructor) {
+            error(bean, "@Table bean needs a non private no argument constructor");
+            valid = false;
+        }
+        return valid ? fields : null;
+    }
+
+    private boolean kind(TypeMirror type, Field field) {
+        switch (type.getKind()) {
+            case INT:
+                field.kind = Kind.INT;
+                return true;
+            case LONG:
+                field.kind = Kind.LONG;
+                return true;
+            case SHORT:
+                field.kind = Kind.SHORT;
+                return true;
+            case DOUBLE:
+                field.kind = Kind.DOUBLE;
+                return true;
+            case FLOAT:
+                field.kind = Kind.FLOAT;
+                return true;
+            case BOOLEAN:
+                field.kind = Kind.BOOLEAN;
+                return true;
+            case ARRAY:
+                if ("byte[]".equals(type.toString())) {
+                    field.kind = Kind.BLOB;
+                    return true;
+                }
+                return false;
+            case DECLARED:
+                String name = type.toString();
+                if ("java.lang.String".equals(name)) {
+                    field.kind = Kind.STRING;
+                    return true;
+                }
+                if (DATE_TIME.equals(name)) {
+                    field.kind = Kind.DATE;
+                    return true;
+                }
+                for (Kind kind : Kind.values()) {
+                    if (kind.box != null && ("java.lang." + kind.box).equals(name)) {
+                        field.kind = kind;
+                        field.boxed = true;
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void write(TypeElement bean, String table, List<Field> fields) throws IOException {
+        String pkg = packageOf(bean);
+        String beanName = bean.getSimpleName().toString();
+        String mapper = beanName + SUFFIX;
+        String qualified = pkg.isEmpty() ? mapper : pkg + "." + mapper;
+
+        List<Field> inserted = new ArrayList<>();
+        StringBuilder ddl = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(table).append(" (");
+        StringBuilder columns = new StringBuilder();
+        StringBuilder insertColumns = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (i > 0) {
+                ddl.append(", ");
+                columns.append(", ");
+            }
+            ddl.append(field.column).append(field.kind.sqlType);
+            if (field.primaryKey) {
+                ddl.append(" PRIMARY KEY");
+            } else {
+                if (field.notNull) {
+                    ddl.append(" NOT NULL");
+                }
+                if (field.unique) {
+                    ddl.append(" UNIQUE");
+                }
+                if (!inserted.isEmpty()) {
+                    insertColumns.append(", ");
+                }
+                insertColumns.append(quote(field.column));
+                inserted.add(field);
+            }
+            columns.append(quote(field.column));
+        }
+        ddl.append(")");
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualified, bean);
+        Writer out = file.openWriter();
+        try {
+            if (!pkg.isEmpty()) {
+                out.write("package " + pkg + ";\n\n");
+            }
+            out.write("import android.content.ContentValues;\n"
+                    + "import android.database.Cursor;\n"
+                    + "import android.database.sqlite.SQLiteStatement;\n\n"
+                    + "import com.dominicapps.tablelab.lab.utils.RowMapper;\n\n");
+            out.write("/**\n * Generated by TableProcessor from " + beanName + ", do not edit.\n */\n\n");
+            out.write("public final class " + mapper + " implements RowMapper<" + beanName + "> {\n\n");
+            out.write("    public static final String TABLE = " + quote(table) + ";\n");
+            out.write("    public static final String DDL = " + quote(ddl.toString()) + ";\n");
+            out.write("    private static final String[] COLUMNS = {" + columns + "};\n");
+            out.write("    private static final String[] INSERT_COLUMNS = {" + insertColumns + "};\n\n");
+
+            out.write("    @Override\n    public String table() {\n        return TABLE;\n    }\n\n");
+            out.write("    @Override\n    public String ddl() {\n        return DDL;\n    }\n\n");
+            out.write("    @Override\n    public String[] columns() {\n        return COLUMNS;\n    }\n\n");
+            out.write("    @Override\n    public String[] insertColumns() {\n        return INSERT_COLUMNS;\n    }\n\n");
+
+            out.write("    @Override\n    public " + beanName + " map(Cursor cursor, int[] index) {\n");
+            out.write("        " + beanName + " t = new " + beanName + "();\n");
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                String index = "index[" + i + "]";
+                out.write("        if (" + index + " >= 0) {\n");
+                out.write("            " + assign(field, field.read(index)) + ";\n");
+                out.write("        }\n");
+            }
+            out.write("        return t;\n    }\n\n");
+
+            out.write("    @Override\n    public void bind(SQLiteStatement statement, " + beanName + " t) {\n");
+            for (int i = 0; i < inserted.size(); i++) {
+                Field field = inserted.get(i);
+                int parameter = i + 1;
+                String value = "v" + parameter;
+                out.write("        " + field.type() + " " + value + " = " + get(field) + ";\n");
+                if (field.nullable()) {
+                    out.write("        if (" + value + " == null) {\n");
+                    out.write("            statement.bindNull(" + parameter + ");\n");
+                    out.write("        } else {\n");
+                    out.write("            statement." + field.kind.bind + "(" + parameter + ", " + field.stored(value) + ");\n");
+                    out.write("        }\n");
+                } else {
+                    out.write("        statement." + field.kind.bind + "(" + parameter + ", " + field.stored(value) + ");\n");
+                }
+            }
+            out.write("    }\n\n");
+
+            out.write("    @Override\n    public ContentValues values(" + beanName + " t) {\n");
+            out.write("        ContentValues values = new ContentValues(" + inserted.size() + ");\n");
+            for (int i = 0; i < inserted.size(); i++) {
+                Field field = inserted.get(i);
+                String column = "INSERT_COLUMNS[" + i + "]";
+                if (field.kind == Kind.DATE) {
+                    String value = "v" + (i + 1);
+                    out.write("        " + field.type() + " " + value + " = " + get(field) + ";\n");
+                    out.write("        if (" + value + " == null) {\n");
+                    out.write("            values.putNull(" + column + ");\n");
+                    out.write("        } else {\n");
+                    out.write("            values.put(" + column + ", " + value + ".getMillis());\n");
+                    out.write("        }\n");
+                } else if (field.kind == Kind.BOOLEAN && !field.boxed) {
+                    out.write("        values.put(" + column + ", " + get(field) + " ? 1 : 0);\n");
+                } else {
+                    out.write("        values.put(" + column + ", " + get(field) + ");\n");
+                }
+            }
+            out.write("        return values;\n    }\n}\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String get(Field field) {
+        return field.getter != null ? "t." + field.getter + "()" : "t." + field.name;
+    }
+
+    private static String assign(Field field, String value) {
+        return field.setter != null ? "t." + field.setter + "(" + value + ")" : "t." + field.name + " = " + value;
+    }
+
+    private boolean has(TypeElement bean, String method, int parameters) {
+        for (Element member : bean.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.METHOD
+                    && member.getSimpleName().contentEquals(method)
+                    && ((ExecutableElement) member).getParameters().size() == parameters
+                    && !member.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String packageOf(TypeElement bean) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(bean);
+        return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static String snake(String camel) {
+        StringBuilder builder = new StringBuilder();
+        for (char c : camel.toCharArray()) {
+            if (Character.isUpperCase(c)) {
+                builder.append('_').append(Character.toLowerCase(c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
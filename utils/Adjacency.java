@@ -0,0 +1,225 @@
+package com.dominicapps.tablelab.lab.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compact in memory index of a many to many table: for every source id its sorted target
+ * ids, CSR style in three int arrays. Edges added or removed after loading are kept aside
+ * and folded in once they grow past a fraction of the index.
+ */
+
+public class Adjacency {
+
+    private static final int[] NONE = new int[0];
+
+    private int[] sources;   // sorted distinct source ids
+    private int[] offsets;   // targets of sources[i] are targets[offsets[i]] .. targets[offsets[i + 1] - 1]
+    private int[] targets;   // sorted per source
+
+    // Pending changes by source, sorted target arrays.
+    private final HashMap<Integer, int[]> added = new HashMap<>();
+    private final HashMap<Integer, int[]> removed = new HashMap<>();
+    private int pending = 0;
+
+    /**
+     * @param sources source id of every edge, sorted
+     * @param targets target id of every edge, sorted within a source
+     * @param edges edges in use of both arrays
+     */
+    public Adjacency(int[] sources, int[] targets, int edges) {
+        load(sources, targets, edges);
+    }
+
+    /**
+     * @param source source id
+     * @return its sorted target ids, a copy
+     */
+    public synchronized int[] targets(int source) {
+        int[] base = base(source);
+        int[] plus = added.get(source);
+        int[] minus = removed.get(source);
+        if (plus == null && minus == null) {
+            return base;
+        }
+
+        int[] merged = new int[base.length + (plus != null ? plus.length : 0)];
+        int size = 0;
+        for (int target : base) {
+            if (minus == null || Arrays.binarySearch(minus, target) < 0) {
+                merged[size++] = target;
+            }
+        }
+        if (plus != null) {
+            for (int target : plus) {
+                merged[size++] = target;
+            }
+        }
+        Arrays.sort(merged, 0, size);
+        return Arrays.copyOf(merged, size);
+    }
+
+    public synchronized boolean contains(int source, int target) {
+        int[] minus = removed.get(source);
+        if (minus != null && Arrays.binarySearch(minus, target) >= 0) {
+            return false;
+        }
+        int[] plus = added.get(source);
+        if (plus != null && Arrays.binarySearch(plus, target) >= 0) {
+            return true;
+        }
+        int key = Arrays.binarySearch(sources, source);
+        return key >= 0 && Arrays.binarySearch(targets, offsets[key], offsets[key + 1], target) >= 0;
+    }
+
+    public synchronized void add(int source, int target) {
+        if (contains(source, target)) {
+            return;
+        }
+        if (!drop(removed, source, target)) {
+            added.put(source, insert(added.get(source), target));
+        }
+        changed();
+    }
+
+    public synchronized void remove(int source, int target) {
+        if (!contains(source, target)) {
+            return;
+        }
+        if (!drop(added, source, target)) {
+            removed.put(source, insert(removed.get(source), target));
+        }
+        changed();
+    }
+
+    /**
+     * Removes every edge of source.
+     * @param source source id
+     */
+    public synchronized void removeSource(int source) {
+        added.remove(source);
+        int[] base = base(source);
+        if (base.length > 0) {
+            removed.put(source, base);
+        }
+        changed();
+    }
+
+    /**
+     * @return edges, pending changes included
+     */
+    public synchronized int edges() {
+        int edges = targets.length;
+        for (int[] plus : added.values()) {
+            edges += plus.length;
+        }
+        for (int[] minus : removed.values()) {
+            edges -= minus.length;
+        }
+        return edges;
+    }
+
+    /**
+     * Folds pending changes into the arrays.
+     */
+    public synchronized void compact() {
+        if (pending == 0) {
+            return;
+        }
+
+        int edges = edges();
+        int[] newSources = new int[edges];
+        int[] newTargets = new int[edges];
+        int size = 0;
+
+        int[] keys = new int[sources.length + added.size()];
+        System.arraycopy(sources, 0, keys, 0, sources.length);
+        int keyCount = sources.length;
+        for (Integer source : added.keySet()) {
+            if (Arrays.binarySearch(sources, source) < 0) {
+                keys[keyCount++] = source;
+            }
+        }
+        Arrays.sort(keys, 0, keyCount);
+
+        for (int i = 0; i < keyCount; i++) {
+            for (int target : targets(keys[i])) {
+                newSources[size] = keys[i];
+                newTargets[size++] = target;
+            }
+        }
+
+        added.clear();
+        removed.clear();
+        load(newSources, newTargets, size);
+    }
+
+    private void load(int[] edgeSources, int[] edgeTargets, int edges) {
+        int count = 0;
+        for (int i = 0; i < edges; i++) {
+            if (i == 0 || edgeSources[i] != edgeSources[i - 1]) {
+                count++;
+            }
+        }
+
+        sources = new int[count];
+        offsets = new int[count + 1];
+        targets = Arrays.copyOf(edgeTargets, edges);
+
+        int key = -1;
+        for (int i = 0; i < edges; i++) {
+            if (i == 0 || edgeSources[i] != edgeSources[i - 1]) {
+                sources[++key] = edgeSources[i];
+                offsets[key] = i;
+            }
+        }
+        offsets[count] = edges;
+        pending = 0;
+    }
+
+    /**
+     * @return targets loaded for source, a copy
+     */
+    private int[] base(int source) {
+        int key = Arrays.binarySearch(sources, source);
+        if (key < 0) {
+            return NONE;
+        }
+        return Arrays.copyOfRange(targets, offsets[key], offsets[key + 1]);
+    }
+
+    private void changed() {
+        if (++pending > Math.max(4096, targets.length / 8)) {
+            compact();
+        }
+    }
+
+    private static int[] insert(int[] sorted, int value) {
+        if (sorted == null) {
+            return new int[]{value};
+        }
+        int at = -Arrays.binarySearch(sorted, value) - 1;
+        int[] grown = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, grown, 0, at);
+        grown[at] = value;
+        System.arraycopy(sorted, at, grown, at + 1, sorted.length - at);
+        return grown;
+    }
+
+    private static boolean drop(HashMap<Integer, int[]> changes, int source, int value) {
+        int[] sorted = changes.get(source);
+        int at = sorted != null ? Arrays.binarySearch(sorted, value) : -1;
+        if (at < 0) {
+            return false;
+        }
+        if (sorted.length == 1) {
+            changes.remove(source);
+        } else {
+            int[] shrunk = new int[sorted.length - 1];
+            System.arraycopy(sorted, 0, shrunk, 0, at);
+            System.arraycopy(sorted, at + 1, shrunk, at, sorted.length - at - 1);
+            changes.put(source, shrunk);
+        }
+        return true;
+    }
+}
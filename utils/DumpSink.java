@@ -0,0 +1,133 @@
+package com.dominicapps.tablelab.lab.utils;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Where TableLab.dump(...) writes its lines. Sinks buffer, close() flushes.
+ */
+
+public abstract class DumpSink implements Closeable {
+
+    /**
+     * @param line one row, without line break
+     */
+    public abstract void line(CharSequence line) throws IOException;
+
+    /**
+     * Logcat cuts entries at about 4k, lines are packed into entries below that.
+     * @param tag log tag
+     * @return logcat sink
+     */
+    public static DumpSink logcat(String tag) {
+        return new Logcat(tag);
+    }
+
+    /**
+     * UTF-8 through a file channel, the file is truncated first.
+     * @param file destination
+     * @return file sink
+     */
+    public static DumpSink file(File file) throws IOException {
+        return new Channel(file);
+    }
+
+    private static final class Logcat extends DumpSink {
+        private static final int MAX_ENTRY = 4000;
+
+        private final String mTag;
+        private final StringBuilder mEntry = new StringBuilder(MAX_ENTRY);
+
+        Logcat(String tag) {
+            mTag = tag;
+        }
+
+        @Override
+        public void line(CharSequence line) {
+            if (mEntry.length() > 0 && mEntry.length() + line.length() + 1 > MAX_ENTRY) {
+                flush();
+            }
+
+            for (int from = 0; from < line.length(); from += MAX_ENTRY) {
+                if (from > 0) {
+                    flush();
+                }
+                mEntry.append(line, from, Math.min(from + MAX_ENTRY, line.length()));
+            }
+            mEntry.append('\n');
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+
+        private void flush() {
+            if (mEntry.length() > 0) {
+                Log.v(mTag, mEntry.toString());
+                mEntry.setLength(0);
+            }
+        }
+    }
+
+    private static final class Channel extends DumpSink {
+        private static final CharBuffer NEW_LINE = CharBuffer.wrap("\n");
+
+        private final FileOutputStream mStream;
+        private final FileChannel mChannel;
+        private final CharsetEncoder mEncoder = Charset.forName("UTF-8").newEncoder();
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+        Channel(File file) throws IOException {
+            mStream = new FileOutputStream(file, false);
+            mChannel = mStream.getChannel();
+        }
+
+        @Override
+        public void line(CharSequence line) throws IOException {
+            encode(CharBuffer.wrap(line));
+            encode(NEW_LINE.duplicate());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+                mChannel.force(false);
+            } finally {
+                mStream.close();
+            }
+        }
+
+        private void encode(CharBuffer chars) throws IOException {
+            while (true) {
+                CoderResult result = mEncoder.encode(chars, mBuffer, true);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isError()) {
+                    result.throwException();
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            mBuffer.flip();
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.dominicapps.tablelab.lab.utils;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms per table and operation, plus the latest slow queries
+ * with their query plan. Installed with TableLab.metrics(...), labs skip every clock read
+ * while none is installed.
+ */
+
+public class Metrics {
+    public static final String TAG = Metrics.class.getSimpleName();
+
+    /**
+     * Slow queries kept for slowQueries().
+     */
+    public static final int SLOW_QUERIES = 64;
+
+    public enum Op {
+        SAVE, BATCH, UPDATE, DELETE, FIND, SELECT, META
+    }
+
+    /**
+     * Receives every measurement as it is recorded, on the thread that ran the operation.
+     */
+    public interface Listener {
+        void onOperation(String table, Op op, long nanos, long cursorNanos, int rows);
+
+        void onSlowQuery(SlowQuery query);
+    }
+
+    /**
+     * An operation over the slow threshold.
+     */
+    public static class SlowQuery {
+
+        private final String table, sql;
+        private final Op op;
+        private final long nanos;
+        private final List<String> plan;
+
+        public SlowQuery(String table, Op op, String sql, long nanos, List<String> plan) {
+            this.table = table;
+            this.op = op;
+            this.sql = sql;
+            this.nanos = nanos;
+            this.plan = Collections.unmodifiableList(plan);
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public Op getOp() {
+            return op;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return EXPLAIN QUERY PLAN details
+         */
+        public List<String> getPlan() {
+            return plan;
+        }
+
+        @Override
+        public String toString() {
+            return table + " " + op + " " + nanos / 1000000 + "ms " + sql + " " + plan;
+        }
+    }
+
+    /**
+     * Totals of one operation on one table. Latencies go in power of two buckets:
+     * bucket b holds durations in [2^(b-1), 2^b) nanoseconds.
+     */
+    public static class Stats {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong cursorNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        void record(long operationNanos, long openNanos, int operationRows) {
+            count.incrementAndGet();
+            rows.addAndGet(operationRows);
+            nanos.addAndGet(operationNanos);
+            cursorNanos.addAndGet(openNanos);
+            buckets.incrementAndGet(bucket(operationNanos));
+
+            long max = maxNanos.get();
+            while (operationNanos > max && !maxNanos.compareAndSet(max, operationNanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getNanos() {
+            return nanos.get();
+        }
+
+        /**
+         * @return time cursors stayed open, from query to close
+         */
+        public long getCursorNanos() {
+            return cursorNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getMeanNanos() {
+            long operations = count.get();
+            return operations > 0 ? nanos.get() / operations : 0;
+        }
+
+        /**
+         * @param p percentile, 0 .. 100
+         * @return upper bound of the bucket holding it, at most twice the real value
+         */
+        public long percentileNanos(double p) {
+            long total = 0;
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : 1L << i;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * @return operations per bucket, see bucket(nanos)
+         */
+        public long[] getBuckets() {
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return counts;
+        }
+
+        @Override
+        public String toString() {
+            return count.get() + " ops, " + rows.get() + " rows, mean " + getMeanNanos() / 1000 + "us, p99 < "
+                    + percentileNanos(99) / 1000 + "us, max " + maxNanos.get() / 1000 + "us";
+        }
+    }
+
+    private final ConcurrentHashMap<String, Stats[]> mStats = new ConcurrentHashMap<>();
+    private final ArrayDeque<SlowQuery> mSlowQueries = new ArrayDeque<>(SLOW_QUERIES);
+    private final long mSlowNanos;
+    private volatile Listener mListener;
+
+    /**
+     * @param slowQueryMillis operations at least this long are logged with their plan. If < 0 none
+     */
+    public Metrics(long slowQueryMillis) {
+        mSlowNanos = slowQueryMillis < 0 ? Long.MAX_VALUE : slowQueryMillis * 1000000;
+    }
+
+    public Metrics listener(Listener listener) {
+        mListener = listener;
+        return this;
+    }
+
+    /**
+     * @param nanos latency
+     * @return histogram bucket: 0 for 0, else 1 + floor(log2(nanos))
+     */
+    public static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    public boolean isSlow(long nanos) {
+        return nanos >= mSlowNanos;
+    }
+
+    /**
+     * @param table table
+     * @param op operation
+     * @param nanos whole operation
+     * @param cursorNanos time its cursor was open, 0 without cursor
+     * @param rows rows returned or written
+     */
+    public void record(String table, Op op, long nanos, long cursorNanos, int rows) {
+        stats(table, op).record(nanos, cursorNanos, rows);
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onOperation(table, op, nanos, cursorNanos, rows);
+        }
+    }
+
+    /**
+     * Keeps query among the latest slow ones and logs it.
+     * @param query slow query
+     */
+    public void slow(SlowQuery query) {
+        synchronized (mSlowQueries) {
+            if (mSlowQueries.size() == SLOW_QUERIES) {
+                mSlowQueries.removeFirst();
+            }
+            mSlowQueries.addLast(query);
+        }
+        Log.w(TAG, query.toString());
+
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onSlowQuery(query);
+        }
+    }
+
+    /**
+     * @param table table
+     * @param op operation
+     * @return live totals, created empty if needed
+     */
+    public Stats stats(String table, Op op) {
+        Stats[] stats = mStats.get(table);
+        if (stats == null) {
+            Stats[] fresh = new Stats[Op.values().length];
+            for (int i = 0; i < fresh.length; i++) {
+                fresh[i] = new Stats();
+            }
+            stats = mStats.putIfAbsent(table, fresh);
+            if (stats == null) {
+                stats = fresh;
+            }
+        }
+        return stats[op.ordinal()];
+    }
+
+    /**
+     * @return tables with recorded operations
+     */
+    public Set<String> tables() {
+        return Collections.unmodifiableSet(mStats.keySet());
+    }
+
+    /**
+     * @return latest slow queries, oldest first
+     */
+    public List<SlowQuery> slowQueries() {
+        synchronized (mSlowQueries) {
+            return new ArrayList<>(mSlowQueries);
+        }
+    }
+
+    public void reset() {
+        mStats.clear();
+        synchronized (mSlowQueries) {
+            mSlowQueries.clear();
+        }
+    }
+
+    /**
+     * Logs every table and operation that ran at least once.
+     */
+    public void log() {
+        for (String table : mStats.keySet()) {
+            for (Op op : Op.values()) {
+                Stats stats = stats(table, op);
+                if (stats.getCount() > 0) {
+                    Log.i(TAG, table + " " + op + ": " + stats);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.dominicapps.tablelab.lab.utils;
+
+import java.util.ArrayList;
+
+/**
+ * One page of a keyset paginated list. Remembers the sort key and id of its last row,
+ * so the next page seeks right after it instead of skipping an OFFSET. Time ordered pages
+ * keep the key as long millis.
+ */
+
+public class Page<T> {
+
+    private final ArrayList<T> items;
+    private final String lastKey;
+    private final long lastTime;
+    private final boolean byTime;
+    private final int lastId;
+    private final boolean hasMore;
+
+    public Page(ArrayList<T> items, String lastKey, int lastId, boolean hasMore) {
+        this.items = items;
+        this.lastKey = lastKey;
+        this.lastTime = 0;
+        this.byTime = false;
+        this.lastId = lastId;
+        this.hasMore = hasMore;
+    }
+
+    public Page(ArrayList<T> items, long lastTime, int lastId, boolean hasMore) {
+        this.items = items;
+        this.lastKey = String.valueOf(lastTime);
+        this.lastTime = lastTime;
+        this.byTime = true;
+        this.lastId = lastId;
+        this.hasMore = hasMore;
+    }
+
+    public ArrayList<T> getItems() {
+        return items;
+    }
+
+    public String getLastKey() {
+        return lastKey;
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public boolean isByTime() {
+        return byTime;
+    }
+
+    /**
+     * @return last key to bind: Long millis if time ordered, else String
+     */
+    public Object getSeekKey() {
+        return byTime ? (Object) lastTime : lastKey;
+    }
+
+    public int getLastId() {
+        return lastId;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+}
@@ -7,18 +7,19 @@ import org.joda.time.DateTime;
 
 /**
  * Reusable class for Many to Many relationships. Speeds up classic
- * id, left_id, right_id.
+ * id, left_id, right_id. Dates are kept as epoch millis, DateTime is built on first get.
  */
 
 public class Pair {
 
     private int id, left, right;
-    private DateTime created, updated;
+    private long created, updated;
+    private DateTime createdDate, updatedDate;
 
     public Pair() {
     }
 
-    public Pair(int id, int left, int right, DateTime created, DateTime updated) {
+    public Pair(int id, int left, int right, long created, long updated) {
         this.id = id;
         this.left = left;
         this.right = right;
@@ -26,24 +27,22 @@ public class Pair {
         this.updated = updated;
     }
 
+    public Pair(int id, int left, int right, DateTime created, DateTime updated) {
+        this(id, left, right, created.getMillis(), updated.getMillis());
+    }
+
     public Pair(int left, int right, DateTime created, DateTime updated) {
-        this.left = left;
-        this.right = right;
-        this.created = created;
-        this.updated = updated;
+        this(0, left, right, created, updated);
     }
 
     public Pair(int left, int right, DateTime updated) {
-        this.left = left;
-        this.right = right;
-        this.updated = updated;
+        this(0, left, right, updated, updated);
     }
 
     public Pair(int left, int right) {
         this.left = left;
         this.right = right;
-        created = TableLab.now();
-        updated = TableLab.now();
+        created = updated = System.currentTimeMillis();
     }
 
     public int getId() {
@@ -71,18 +70,44 @@ public class Pair {
     }
 
     public DateTime getCreated() {
-        return created;
+        if (createdDate == null) {
+            createdDate = TableLab.date(created);
+        }
+        return createdDate;
     }
 
     public void setCreated(DateTime created) {
+        this.created = created.getMillis();
+        this.createdDate = created;
+    }
+
+    public long getCreatedMillis() {
+        return created;
+    }
+
+    public void setCreatedMillis(long created) {
         this.created = created;
+        this.createdDate = null;
     }
 
     public DateTime getUpdated() {
-        return updated;
+        if (updatedDate == null) {
+            updatedDate = TableLab.date(updated);
+        }
+        return updatedDate;
     }
 
     public void setUpdated(DateTime updated) {
+        this.updated = updated.getMillis();
+        this.updatedDate = updated;
+    }
+
+    public long getUpdatedMillis() {
+        return updated;
+    }
+
+    public void setUpdatedMillis(long updated) {
         this.updated = updated;
+        this.updatedDate = null;
     }
 }
@@ -0,0 +1,153 @@
+package com.dominicapps.tablelab.lab.utils;
+
+import java.util.Arrays;
+
+/**
+ * Everything that decides the SQL text of a select, but none of its arguments.
+ * Two calls with the same shape run the same SQL, so it is used as cache key.
+ */
+
+public class QueryShape {
+
+    private final String table;
+    private final String[] columns, where;
+    private final String orderBy, groupBy, having, limit;
+    private final boolean byId, isExact, orderByTime, ascOrder, hasRange;
+    private final int hash;
+
+    /**
+     * @param table table to search
+     * @param columns columns to retrieve. If null all
+     * @param where columns to search. If null no search
+     * @param orderBy column to order. If null no order
+     * @param groupBy group by column
+     * @param having having clause
+     * @param limit list limit
+     * @param byId search by id instead of where
+     * @param isExact choose = ? | LIKE ?
+     * @param orderByTime orderBy is when() rather than lower(orderBy())
+     * @param ascOrder choose ASC | DESC
+     * @param hasRange when() range is set
+     */
+    public QueryShape(String table, String[] columns, String[] where, String orderBy,
+                      String groupBy, String having, String limit, boolean byId,
+                      boolean isExact, boolean orderByTime, boolean ascOrder, boolean hasRange) {
+        this.table = table;
+        this.columns = columns;
+        this.where = where;
+        this.orderBy = orderBy;
+        this.groupBy = groupBy;
+        this.having = having;
+        this.limit = limit;
+        this.byId = byId;
+        this.isExact = isExact;
+        this.orderByTime = orderByTime;
+        this.ascOrder = ascOrder;
+        this.hasRange = hasRange;
+        this.hash = computeHash();
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public String[] getWhere() {
+        return where;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public String getGroupBy() {
+        return groupBy;
+    }
+
+    public String getHaving() {
+        return having;
+    }
+
+    public String getLimit() {
+        return limit;
+    }
+
+    public boolean isById() {
+        return byId;
+    }
+
+    public boolean isExact() {
+        return isExact;
+    }
+
+    public boolean isOrderByTime() {
+        return orderByTime;
+    }
+
+    public boolean isAscOrder() {
+        return ascOrder;
+    }
+
+    public boolean hasRange() {
+        return hasRange;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryShape)) {
+            return false;
+        }
+        QueryShape shape = (QueryShape) o;
+        return hash == shape.hash
+                && byId == shape.byId
+                && isExact == shape.isExact
+                && orderByTime == shape.orderByTime
+                && ascOrder == shape.ascOrder
+                && hasRange == shape.hasRange
+                && same(table, shape.table)
+                && same(orderBy, shape.orderBy)
+                && same(groupBy, shape.groupBy)
+                && same(having, shape.having)
+                && same(limit, shape.limit)
+                && Arrays.equals(columns, shape.columns)
+                && Arrays.equals(where, shape.where);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return table + " where " + Arrays.toString(where) + (isExact ? " = " : " LIKE ")
+                + " order " + orderBy + (ascOrder ? " ASC" : " DESC")
+                + (hasRange ? " range" : "") + " limit " + limit;
+    }
+
+    private int computeHash() {
+        int result = table != null ? table.hashCode() : 0;
+        result = 31 * result + Arrays.hashCode(columns);
+        result = 31 * result + Arrays.hashCode(where);
+        result = 31 * result + (orderBy != null ? orderBy.hashCode() : 0);
+        result = 31 * result + (groupBy != null ? groupBy.hashCode() : 0);
+        result = 31 * result + (having != null ? having.hashCode() : 0);
+        result = 31 * result + (limit != null ? limit.hashCode() : 0);
+        result = 31 * result + (byId ? 1 : 0);
+        result = 31 * result + (isExact ? 1 : 0);
+        result = 31 * result + (orderByTime ? 1 : 0);
+        result = 31 * result + (ascOrder ? 1 : 0);
+        result = 31 * result + (hasRange ? 1 : 0);
+        return result;
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
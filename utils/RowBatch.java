@@ -0,0 +1,138 @@
+package com.dominicapps.tablelab.lab.utils;
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * A few projected columns of many rows, column by column in primitive arrays.
+ * Each column is read as Cursor.FIELD_TYPE_INTEGER, FIELD_TYPE_FLOAT or FIELD_TYPE_STRING.
+ * NULL reads as 0, 0.0 or null.
+ */
+
+public class RowBatch {
+
+    private final String[] columns;
+    private final int[] types;
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final String[][] strings;
+    private int size = 0;
+
+    /**
+     * @param columns projected columns, in cursor order
+     * @param types Cursor.FIELD_TYPE_* of each column
+     * @param capacity rows expected, grows if needed
+     */
+    public RowBatch(String[] columns, int[] types, int capacity) {
+        if (columns.length == 0 || columns.length != types.length) {
+            throw new IllegalArgumentException("One type per column: " + Arrays.toString(columns));
+        }
+        this.columns = columns;
+        this.types = types;
+        this.longs = new long[columns.length][];
+        this.doubles = new double[columns.length][];
+        this.strings = new String[columns.length][];
+
+        int rows = Math.max(capacity, 16);
+        for (int i = 0; i < types.length; i++) {
+            switch (types[i]) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    longs[i] = new long[rows];
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    doubles[i] = new double[rows];
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    strings[i] = new String[rows];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported type " + types[i] + " for " + columns[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends the current row of cursor, reading columns 0 .. columns.length - 1.
+     * @param cursor cursor on a row
+     */
+    public void add(Cursor cursor) {
+        if (size == capacity()) {
+            grow();
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (longs[i] != null) {
+                longs[i][size] = cursor.getLong(i);
+            } else if (doubles[i] != null) {
+                doubles[i][size] = cursor.getDouble(i);
+            } else {
+                strings[i][size] = cursor.getString(i);
+            }
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public long getLong(int row, int column) {
+        return longs[column][row];
+    }
+
+    public double getDouble(int row, int column) {
+        return doubles[column][row];
+    }
+
+    public String getString(int row, int column) {
+        return strings[column][row];
+    }
+
+    /**
+     * @param column FIELD_TYPE_INTEGER column
+     * @return its values, trimmed to size()
+     */
+    public long[] longs(int column) {
+        return Arrays.copyOf(longs[column], size);
+    }
+
+    /**
+     * @param column FIELD_TYPE_FLOAT column
+     * @return its values, trimmed to size()
+     */
+    public double[] doubles(int column) {
+        return Arrays.copyOf(doubles[column], size);
+    }
+
+    /**
+     * @param column FIELD_TYPE_STRING column
+     * @return its values, trimmed to size()
+     */
+    public String[] strings(int column) {
+        return Arrays.copyOf(strings[column], size);
+    }
+
+    private int capacity() {
+        if (longs[0] != null) {
+            return longs[0].length;
+        }
+        return doubles[0] != null ? doubles[0].length : strings[0].length;
+    }
+
+    private void grow() {
+        int capacity = capacity() * 2;
+        for (int i = 0; i < types.length; i++) {
+            if (longs[i] != null) {
+                longs[i] = Arrays.copyOf(longs[i], capacity);
+            } else if (doubles[i] != null) {
+                doubles[i] = Arrays.copyOf(doubles[i], capacity);
+            } else {
+                strings[i] = Arrays.copyOf(strings[i], capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.dominicapps.tablelab.lab.utils;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Reads and writes one bean type without reflection or per row column lookups.
+ * Generated by TableProcessor for @Table beans, see TableLab.mapper().
+ */
+
+public interface RowMapper<T> {
+
+    String table();
+
+    /**
+     * @return CREATE TABLE IF NOT EXISTS statement
+     */
+    String ddl();
+
+    /**
+     * @return every column, in map(...) index order
+     */
+    String[] columns();
+
+    /**
+     * @return columns bound by bind(...), in parameter order. All but the primary key
+     */
+    String[] insertColumns();
+
+    /**
+     * @param cursor cursor on a row
+     * @param index positions of columns() in cursor, -1 for columns not selected
+     * @return bean
+     */
+    T map(Cursor cursor, int[] index);
+
+    /**
+     * Binds insertColumns() of t as parameters 1 .. n.
+     * @param statement compiled INSERT of insertColumns()
+     * @param t bean
+     */
+    void bind(SQLiteStatement statement, T t);
+
+    /**
+     * @param t bean
+     * @return insertColumns() of t, for update(...) and upsert(...)
+     */
+    ContentValues values(T t);
+}
@@ -0,0 +1,166 @@
+package com.dominicapps.tablelab.lab.utils;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the database schema: tables, views, their columns and indexes.
+ * Read in one pass over sqlite_master plus one PRAGMA table_info per table or view.
+ */
+
+public class Schema {
+
+    /**
+     * One column as PRAGMA table_info describes it.
+     */
+    public static class Column {
+
+        private final String name, type;
+        private final boolean notNull, primaryKey;
+
+        public Column(String name, String type, boolean notNull, boolean primaryKey) {
+            this.name = name;
+            this.type = type;
+            this.notNull = notNull;
+            this.primaryKey = primaryKey;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public boolean isNotNull() {
+            return notNull;
+        }
+
+        public boolean isPrimaryKey() {
+            return primaryKey;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + type;
+        }
+    }
+
+    private final int userVersion;
+    private final List<String> tables, views;
+    private final Map<String, List<Column>> columns;
+    private final Map<String, List<String>> indexes;
+
+    public Schema(int userVersion, List<String> tables, List<String> views,
+                  Map<String, List<Column>> columns, Map<String, List<String>> indexes) {
+        this.userVersion = userVersion;
+        this.tables = Collections.unmodifiableList(tables);
+        this.views = Collections.unmodifiableList(views);
+        this.columns = Collections.unmodifiableMap(columns);
+        this.indexes = Collections.unmodifiableMap(indexes);
+    }
+
+    /**
+     * @param db open database
+     * @return fresh snapshot
+     */
+    public static Schema read(SQLiteDatabase db) {
+        List<String> tables = new ArrayList<>();
+        List<String> views = new ArrayList<>();
+        Map<String, List<Column>> columns = new HashMap<>();
+        Map<String, List<String>> indexes = new HashMap<>();
+
+        Cursor cursor = db.rawQuery("select type, name, tbl_name from sqlite_master "
+                + "where type in ('table', 'view', 'index') order by name", null);
+        try {
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                String name = cursor.getString(1);
+                if ("table".equals(type)) {
+                    tables.add(name);
+                } else if ("view".equals(type)) {
+                    views.add(name);
+                } else {
+                    String table = cursor.getString(2);
+                    List<String> tableIndexes = indexes.get(table);
+                    if (tableIndexes == null) {
+                        tableIndexes = new ArrayList<>();
+                        indexes.put(table, tableIndexes);
+                    }
+                    tableIndexes.add(name);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (String table : tables) {
+            columns.put(table, Collections.unmodifiableList(tableInfo(db, table)));
+        }
+        for (String view : views) {
+            columns.put(view, Collections.unmodifiableList(tableInfo(db, view)));
+        }
+        for (Map.Entry<String, List<String>> entry : indexes.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        return new Schema(db.getVersion(), tables, views, columns, indexes);
+    }
+
+    private static List<Column> tableInfo(SQLiteDatabase db, String table) {
+        List<Column> columns = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(`" + table + "`)", null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.add(new Column(cursor.getString(1), cursor.getString(2),
+                        cursor.getInt(3) != 0, cursor.getInt(5) != 0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    /**
+     * @return user_version the snapshot was read at
+     */
+    public int getUserVersion() {
+        return userVersion;
+    }
+
+    public List<String> getTables() {
+        return tables;
+    }
+
+    public List<String> getViews() {
+        return views;
+    }
+
+    /**
+     * @param table table or view
+     * @return its columns, null if unknown
+     */
+    public List<Column> getColumns(String table) {
+        return columns.get(table);
+    }
+
+    /**
+     * @param table table
+     * @return its index names, empty if none
+     */
+    public List<String> getIndexes(String table) {
+        List<String> tableIndexes = indexes.get(table);
+        return tableIndexes != null ? tableIndexes : Collections.<String>emptyList();
+    }
+
+    public boolean hasTable(String table) {
+        return tables.contains(table);
+    }
+}